@@ -0,0 +1,134 @@
+package juggler;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The waits a goroutine blocked on a channel goes through.
+ *
+ * A goroutine running on a ForkJoinPool worker, as under
+ * {@link WorkStealingExecutor}, waits through a ManagedBlocker, so the pool
+ * can start a spare worker in the meantime. Otherwise a pipeline with more
+ * blocked goroutines than the pool has workers would leave no worker to run
+ * the goroutine which unblocks them. Other threads wait directly.
+ */
+final class Blocking {
+
+	/**
+	 * One wait, announced to the pool beforehand.
+	 */
+	private abstract static class Wait implements ForkJoinPool.ManagedBlocker {
+
+		private boolean waited;
+
+		abstract void await() throws InterruptedException;
+
+		@Override
+		public final boolean block() throws InterruptedException {
+			if (!waited) {
+				waited = true;
+				await();
+			}
+			return true;
+		}
+
+		@Override
+		public final boolean isReleasable() {
+			return waited;
+		}
+	}
+
+	private Blocking() {
+	}
+
+	/**
+	 * Parks the current thread.
+	 *
+	 * @param nanos
+	 *            the longest to park for, or Long.MAX_VALUE for no limit
+	 */
+	static void park(final Object blocker, final long nanos) {
+		if (!on_worker()) {
+			park_now(blocker, nanos);
+			return;
+		}
+		try {
+			ForkJoinPool.managedBlock(new Wait() {
+				@Override
+				void await() {
+					park_now(blocker, nanos);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Waits on a monitor the current thread holds, as Object.wait() does.
+	 */
+	static void wait(final Object monitor) throws InterruptedException {
+		if (!on_worker()) {
+			monitor.wait();
+			return;
+		}
+		ForkJoinPool.managedBlock(new Wait() {
+			@Override
+			void await() throws InterruptedException {
+				monitor.wait();
+			}
+		});
+	}
+
+	/**
+	 * Waits on a monitor the current thread holds for at most the given
+	 * number of nanoseconds.
+	 */
+	static void timedWait(final Object monitor, final long nanos) throws InterruptedException {
+		if (!on_worker()) {
+			TimeUnit.NANOSECONDS.timedWait(monitor, nanos);
+			return;
+		}
+		ForkJoinPool.managedBlock(new Wait() {
+			@Override
+			void await() throws InterruptedException {
+				TimeUnit.NANOSECONDS.timedWait(monitor, nanos);
+			}
+		});
+	}
+
+	/**
+	 * Waits on a condition of a lock the current thread holds for at most
+	 * the given number of nanoseconds, as Condition.awaitNanos does.
+	 *
+	 * @return an estimate of the nanoseconds left
+	 */
+	static long awaitNanos(final Condition condition, final long nanos) throws InterruptedException {
+		if (!on_worker()) {
+			return condition.awaitNanos(nanos);
+		}
+		long deadline = System.nanoTime() + nanos;
+		ForkJoinPool.managedBlock(new Wait() {
+			@Override
+			void await() throws InterruptedException {
+				condition.awaitNanos(nanos);
+			}
+		});
+		return deadline - System.nanoTime();
+	}
+
+	private static boolean on_worker() {
+		return Thread.currentThread() instanceof ForkJoinWorkerThread;
+	}
+
+	private static void park_now(Object blocker, long nanos) {
+		if (nanos == Long.MAX_VALUE) {
+			LockSupport.park(blocker);
+		} else {
+			LockSupport.parkNanos(blocker, nanos);
+		}
+	}
+}
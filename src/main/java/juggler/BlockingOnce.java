@@ -4,6 +4,8 @@ import juggler.errors.Rollback;
 
 class BlockingOnce extends Once {
 
+	static final String ROLLBACK_MSG = "rolled back";
+
 	private Error rollback_error;
 
 	/*public Error perform() {
@@ -39,9 +41,15 @@ class BlockingOnce extends Once {
 		}
 	}
 
+	void reset() {
+		synchronized (mutex) {
+			performed = false;
+		}
+	}
+
 	protected Error rollback_error() {
 		if (rollback_error == null) {
-			rollback_error = new Error("rolled back");
+			rollback_error = new Error(ROLLBACK_MSG);
 		}
 		return rollback_error;
 	}
@@ -2,20 +2,46 @@ package juggler;
 
 import juggler.Pop.PopBlock;
 import juggler.Push.PushBlock;
+import juggler.errors.ChannelClosedError;
 import juggler.errors.InvalidQueueSizeError;
 
-import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
 
-public class Buffered<T extends Serializable> extends Queue<T> {
+public class Buffered<T> extends Queue<T> {
 
-	private int size;
-	private int max;
+	/**
+	 * Values sent but not yet received, in a ring of exactly max slots so
+	 * both ends of the buffer are O(1).
+	 */
+	protected final RingBuffer<T> queue;
+	private final int max;
+
+	private final PushBlock<T> offer = new PushBlock<T>() {
+		@Override
+		public void yield(T obj) {
+			queue.offer(obj);
+		}
+	};
+
+	private final PopBlock<T> poll = new PopBlock<T>() {
+		@Override
+		public T yield() {
+			return queue.poll();
+		}
+	};
 
 	public Buffered(int max) {
+		this(max, null);
+	}
+
+	public Buffered(int max, Codec<T> codec) {
+		super(codec);
 		if (max < 1) {
 			throw new InvalidQueueSizeError("queue size must be at least 1");
 		}
 		this.max = max;
+		this.queue = new RingBuffer<T>(max);
 	}
 
 	@Override
@@ -30,23 +56,147 @@ public class Buffered<T extends Serializable> extends Queue<T> {
 
 	@Override
 	public boolean pushable() {
-		return max > size;
+		return !queue.isFull();
 	}
 
 	@Override
 	public boolean poppable() {
-		return size > 0;
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * Completes under the mutex without creating an operation when the
+	 * buffer has room and no earlier send is waiting; only a send which has
+	 * to block registers a Push.
+	 */
+	@Override
+	public void push(T object) {
+		boolean buffered = false;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (pushes.isEmpty() && pushable()) {
+				queue.offer(outgoing(object));
+				process();
+				buffered = true;
+			}
+		}
+		if (buffered) {
+			signal_ready();
+			return;
+		}
+		super.push(object);
+	}
+
+	/**
+	 * Completes under the mutex without creating an operation when a value
+	 * is buffered; only a receive which has to block registers a Pop.
+	 */
+	@Override
+	public T pop() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (pops.isEmpty() && poppable()) {
+				T object = queue.poll();
+				process();
+				return object;
+			}
+		}
+		return super.pop();
+	}
+
+	@Override
+	public boolean tryPush(T object) {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (!pushes.isEmpty() || !pushable()) {
+				return false;
+			}
+			queue.offer(outgoing(object));
+			process();
+		}
+		signal_ready();
+		return true;
 	}
 
 	@Override
-	protected void reset_custom_state() {
-		size = queue.size();
+	public T tryPop() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (!pops.isEmpty() || !poppable()) {
+				return null;
+			}
+			T object = queue.poll();
+			process();
+			return object;
+		}
+	}
+
+	/**
+	 * Copies objects straight into the buffer while it has room and no
+	 * earlier send is waiting, then hands them to waiting receivers in one
+	 * pass. Only when the buffer fills does it fall back to a blocking send
+	 * for the next object.
+	 */
+	@Override
+	public void pushAll(Collection<? extends T> objects) {
+		Iterator<? extends T> it = objects.iterator();
+		while (it.hasNext()) {
+			synchronized (mutex) {
+				if (isClosed()) {
+					throw new ChannelClosedError();
+				}
+				while (it.hasNext() && pushes.isEmpty() && pushable()) {
+					queue.offer(outgoing(it.next()));
+				}
+				process();
+			}
+			signal_ready();
+			if (it.hasNext()) {
+				push(it.next());
+			}
+		}
+	}
+
+	/**
+	 * Takes buffered objects straight from the ring, letting waiting
+	 * senders refill the freed slots between passes.
+	 */
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		int n = 0;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (n < max && poppable()) {
+				while (n < max && poppable()) {
+					into.add(queue.poll());
+					n += 1;
+				}
+				process();
+			}
+		}
+		return n;
+	}
+
+	@Override
+	protected void clear_buffer() {
+		queue.clear();
 	}
 
 	@Override
 	protected void process() {
 		if ((pops.isEmpty() && !pushable())
-				|| (pushes.isEmpty() && !poppable())) {
+				|| (pushes.isEmpty() && !poppable())
+				|| operations.isEmpty()) {
 			return;
 		}
 
@@ -54,48 +204,51 @@ public class Buffered<T extends Serializable> extends Queue<T> {
 		while (true) {
 			if (operation instanceof Push) {
 				if (pushable()) {
-					((Push<T>) operation).receive(new PushBlock() {
-						@Override
-						public void yield(byte[] obj) {
-							size += 1;
-							queue.add(new String(obj));
+					try {
+						((Push<T>) operation).receive(offer);
+					} catch (Error error) {
+						// a select which completed one of its other cases
+						if (!error.isMessage(Once.ERROR_MSG)) {
+							throw error;
 						}
-					});
+					}
 
 					operations.remove(operation);
 					pushes.remove(operation);
-				} else if (poppable() && operation.equals(pops.getFirst())) {
+				} else if (poppable() && !pops.isEmpty()) {
+					operation = pops.getFirst();
 					continue;
 				} else {
 					break;
 				}
 			} else { // Pop
 				if (poppable()) {
-					((Pop<T>) operation).send(new PopBlock() {
-						@Override
-						public byte[] yield() {
-							size -= 1;
-							return queue.remove(0).getBytes();
+					try {
+						((Pop<T>) operation).send(poll);
+					} catch (Error error) {
+						if (!error.isMessage(Once.ERROR_MSG)) {
+							throw error;
 						}
-					});
+					}
 					operations.remove(operation);
 					pops.remove(operation);
-				} else if (pushable() && operation.equals(pushes.getFirst())) {
+				} else if (pushable() && !pushes.isEmpty()) {
+					operation = pushes.getFirst();
 					continue;
 				} else {
 					break;
 				}
 			}
 
-			operation = operations.getFirst();
-			if (operation == null) {
+			if (operations.isEmpty()) {
 				break;
 			}
+			operation = operations.getFirst();
 		}
 	}
 
     int size() {
-        return size;
+        return queue.size();
     }
 
     int max() {
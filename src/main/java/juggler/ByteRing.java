@@ -0,0 +1,121 @@
+package juggler;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A FIFO of variable-length byte records in a fixed direct ByteBuffer arena.
+ * Each record is a four byte length followed by the payload; records wrap
+ * around the end of the arena byte by byte, so the whole capacity is usable.
+ *
+ * However many records it holds, the heap cost is this object and the
+ * ByteBuffer header. Not thread-safe; callers synchronize on the owning
+ * queue's mutex.
+ */
+final class ByteRing {
+
+	static final int HEADER = 4;
+
+	private final ByteBuffer arena;
+	private final int capacity;
+	private final byte[] header;
+
+	private int head;
+	private int used;
+	private int count;
+
+	public ByteRing(int capacity) {
+		this.arena = ByteBuffer.allocateDirect(capacity);
+		this.capacity = capacity;
+		this.header = new byte[HEADER];
+	}
+
+	/**
+	 * @return true if a record with a payload of the given length fits now
+	 */
+	public boolean fits(int length) {
+		return HEADER + length <= capacity - used;
+	}
+
+	public boolean offer(byte[] payload) {
+		if (!fits(payload.length)) {
+			return false;
+		}
+		int length = payload.length;
+		header[0] = (byte) (length >>> 24);
+		header[1] = (byte) (length >>> 16);
+		header[2] = (byte) (length >>> 8);
+		header[3] = (byte) length;
+		int tail = wrap(head + used);
+		tail = write(tail, header, HEADER);
+		write(tail, payload, length);
+		used += HEADER + length;
+		count += 1;
+		return true;
+	}
+
+	public byte[] poll() {
+		if (count == 0) {
+			return null;
+		}
+		int position = read(head, header, HEADER);
+		int length = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16)
+				| ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+		byte[] payload = new byte[length];
+		position = read(position, payload, length);
+		head = position;
+		used -= HEADER + length;
+		count -= 1;
+		if (count == 0) {
+			head = 0;
+		}
+		return payload;
+	}
+
+	public void clear() {
+		head = 0;
+		used = 0;
+		count = 0;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int usedBytes() {
+		return used;
+	}
+
+	private int write(int position, byte[] src, int length) {
+		int first = Math.min(length, capacity - position);
+		arena.position(position);
+		arena.put(src, 0, first);
+		if (first < length) {
+			arena.position(0);
+			arena.put(src, first, length - first);
+		}
+		return wrap(position + length);
+	}
+
+	private int read(int position, byte[] dst, int length) {
+		int first = Math.min(length, capacity - position);
+		arena.position(position);
+		arena.get(dst, 0, first);
+		if (first < length) {
+			arena.position(0);
+			arena.get(dst, first, length - first);
+		}
+		return wrap(position + length);
+	}
+
+	private int wrap(int position) {
+		return position >= capacity ? position - capacity : position;
+	}
+}
@@ -1,11 +1,22 @@
 package juggler;
 
 
+import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import juggler.errors.ChannelClosedError;
 import juggler.errors.InvalidDirectionError;
@@ -25,9 +36,13 @@ import juggler.errors.ReceiveError;
  * value that can be allocated and passed around like any other. A common use of
  * this property is to implement safe, parallel demultiplexing.
  *
+ * Values are passed by reference, as in Go: a receiver sees the very object
+ * that was sent. Channels created with a {@link Codec} instead hand over a
+ * copy of the value.
+ *
  * - http://golang.org/doc/effective_go.html#chan_of_chan
  */
-public class Channel<T> implements Serializable {
+public class Channel<T> implements Serializable, Iterable<T> {
 
 	private static final long serialVersionUID = 8376740498686707230L;
 
@@ -56,13 +71,108 @@ public class Channel<T> implements Serializable {
     }
 
     public Channel(String name, Direction direction, int max) {
+		this(name, direction, max, null);
+	}
+
+	public Channel(int max, Codec<T> codec) {
+		this(null, null, max, codec);
+	}
+
+	/**
+	 * @param codec
+	 *            if not null, receivers get a copy of each value made with
+	 *            the codec when it was sent, rather than the sender's own
+	 *            reference.
+	 */
+	public Channel(String name, Direction direction, int max, Codec<T> codec) {
 		this.max = max;
 		this.closed = false;
 		this.name = name == null ? UUID.randomUUID().toString() : name;
 		this.direction = direction == null ? Direction.BIDIRECTIONAL
 				: direction;
 		this.close_mutex = new Object();
-		this.queue = Queues.<T>register(this.name, this.max);
+		this.queue = Queues.<T>register(this.name, this.max, codec);
+	}
+
+	/**
+	 * Wraps a queue built by one of the static factories below.
+	 */
+	Channel(int max, Queue<T> queue) {
+		this.max = max;
+		this.closed = false;
+		this.name = UUID.randomUUID().toString();
+		this.direction = Direction.BIDIRECTIONAL;
+		this.close_mutex = new Object();
+		this.queue = Queues.register(this.name, queue);
+	}
+
+	/**
+	 * A buffered channel for exactly one sending and one receiving
+	 * goroutine, which sends and receives without locking while no select
+	 * or async operation is waiting on it.
+	 */
+	public static <T> Channel<T> spsc(int max) {
+		return new Channel<T>(max, new SpscBuffered<T>(max));
+	}
+
+	/**
+	 * A buffered channel for any number of sending and receiving
+	 * goroutines, which only locks when it is full or empty, or a select
+	 * or async operation is waiting on it.
+	 */
+	public static <T> Channel<T> mpmc(int max) {
+		return new Channel<T>(max, new MpmcBuffered<T>(max));
+	}
+
+	/**
+	 * A channel whose sends never block, however far receivers fall behind.
+	 */
+	public static <T> Channel<T> unbounded() {
+		return unbounded(0);
+	}
+
+	/**
+	 * @param soft_limit
+	 *            the backlog above which a warning is logged, or 0 for none
+	 */
+	public static <T> Channel<T> unbounded(int soft_limit) {
+		return new Channel<T>(Integer.MAX_VALUE, new Unbounded<T>(soft_limit));
+	}
+
+	/**
+	 * A buffered channel which keeps values encoded with the codec in an
+	 * off-heap arena of the given number of bytes. Its max is that byte
+	 * capacity.
+	 */
+	public static <T> Channel<T> offHeap(int capacity, Codec<T> codec) {
+		return new Channel<T>(capacity, new OffHeapBuffered<T>(capacity, codec));
+	}
+
+	/**
+	 * A buffered channel whose sends never block: values beyond max are
+	 * encoded with the codec and spilled to a temporary file, and read back
+	 * in order as the buffer drains. The file is deleted on close.
+	 */
+	public static <T> Channel<T> spilling(int max, Codec<T> codec) {
+		return new Channel<T>(max, new Spilling<T>(max, codec));
+	}
+
+	/**
+	 * @param directory
+	 *            where the spill file is created
+	 */
+	public static <T> Channel<T> spilling(int max, Codec<T> codec, File directory) {
+		return new Channel<T>(max, new Spilling<T>(max, codec, directory));
+	}
+
+	/**
+	 * A channel kept in memory-mapped segment files in the given directory.
+	 * Values sent and not yet received when the channel is closed, or the
+	 * process dies, are received by the next durable channel opened on the
+	 * same directory.
+	 */
+	public static <T> Channel<T> durable(File directory, Codec<T> codec) {
+		return new Channel<T>(Integer.MAX_VALUE, new Durable<T>(directory, codec));
 	}
 
 	public Queue<T> getQueue() {
@@ -102,6 +212,47 @@ public class Channel<T> implements Serializable {
 		send(object/*, options*/);
 	}
 
+	/**
+	 * Sends every object in iteration order, moving as many as the buffer
+	 * has room for at a time and blocking only when it is full.
+	 */
+	public void sendAll(Collection<? extends T> objects) {
+		check_direction(Direction.SEND);
+		queue.pushAll(objects);
+	}
+
+	/**
+	 * Sends the value only if that can be done without blocking. Nothing
+	 * is allocated or registered with the channel when it cannot.
+	 *
+	 * @return true if the value was sent
+	 */
+	public boolean trySend(T object) {
+		check_direction(Direction.SEND);
+		return queue.tryPush(object);
+	}
+
+	/**
+	 * Waits up to timeout milliseconds for the value to be sent.
+	 *
+	 * @return true if the value was sent, false if the timeout elapsed
+	 */
+	public boolean send(T object, long timeout) {
+		check_direction(Direction.SEND);
+		return queue.push(object, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Sends the value without blocking the caller. The future completes
+	 * when a receiver or the buffer takes the value, on the goroutine which
+	 * matched it, and fails with ChannelClosedError if the channel is
+	 * closed first. Cancelling it withdraws the send.
+	 */
+	public CompletableFuture<Void> sendAsync(T object) {
+		check_direction(Direction.SEND);
+		return OperationFuture.send(getQueue(), object);
+	}
+
 	public boolean pushable() {
 		return queue.pushable();
 	}
@@ -121,6 +272,112 @@ public class Channel<T> implements Serializable {
 		return receive();
 	}
 
+	/**
+	 * Receives a value without blocking the caller. The future completes
+	 * with the value on the goroutine which matched the receive, and fails
+	 * with ReceiveError if the channel is closed first. Cancelling it
+	 * withdraws the receive.
+	 */
+	public CompletableFuture<T> receiveAsync() {
+		check_direction(Direction.RECEIVE);
+		return OperationFuture.receive(getQueue());
+	}
+
+	/**
+	 * Receives a value only if one is ready. Nothing is allocated or
+	 * registered with the channel when none is.
+	 *
+	 * @return the value, or null if none was ready
+	 */
+	public T tryReceive() throws ReceiveError {
+		check_direction(Direction.RECEIVE);
+		return queue.tryPop();
+	}
+
+	/**
+	 * Waits up to timeout milliseconds for a value.
+	 *
+	 * @return the value, or null if the timeout elapsed
+	 */
+	public T receive(long timeout) throws ReceiveError {
+		check_direction(Direction.RECEIVE);
+		return queue.pop(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Receives up to max values that are ready without blocking.
+	 *
+	 * @return the number of values added to the collection
+	 */
+	public int drainTo(Collection<? super T> into, int max) {
+		check_direction(Direction.RECEIVE);
+		return queue.drainTo(into, max);
+	}
+
+	/**
+	 * Waits up to timeout milliseconds for a value, then receives up to max
+	 * values that are ready without further blocking.
+	 *
+	 * @return the values received, empty if the timeout elapsed
+	 */
+	public List<T> receiveBatch(int max, long timeout) throws ReceiveError {
+		check_direction(Direction.RECEIVE);
+		return queue.popBatch(max, timeout, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Receives values until the channel is closed, like ranging over a
+	 * channel. Values are taken in batches, so ones already taken are lost
+	 * to other receivers if iteration stops early.
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return Spliterators.iterator(spliterator());
+	}
+
+	/**
+	 * Receives values until the channel is closed. It splits into
+	 * spliterators which compete for values on the same channel.
+	 */
+	@Override
+	public Spliterator<T> spliterator() {
+		check_direction(Direction.RECEIVE);
+		return new ChannelSpliterator<T>(getQueue());
+	}
+
+	/**
+	 * A stream of the values received until the channel is closed. A
+	 * parallel stream receives with several workers at once.
+	 */
+	public Stream<T> stream() {
+		return StreamSupport.stream(spliterator(), false);
+	}
+
+	/**
+	 * A publisher of the values received from this channel, completing
+	 * when it is closed. Subscribers receive only what they request and no
+	 * goroutine waits on the channel while they have no demand.
+	 */
+	public Flow.Publisher<T> publisher() {
+		check_direction(Direction.RECEIVE);
+		return new ChannelPublisher<T>(getQueue());
+	}
+
+	/**
+	 * A subscriber which sends everything it is given into this channel.
+	 * It keeps as many values requested as the channel buffers, one if it
+	 * is unbuffered, so the publisher runs at most twice the buffer ahead
+	 * of receivers; an off-heap channel, whose size counts bytes, keeps a
+	 * fixed batch requested instead. It leaves closing the channel to its
+	 * owner.
+	 */
+	public Flow.Subscriber<T> subscriber() {
+		check_direction(Direction.SEND);
+		// an off-heap channel's max counts bytes, not values
+		int prefetch = queue instanceof OffHeapBuffered ? ChannelPublisher.BATCH : max;
+		return new ChannelSubscriber<T>(getQueue(), prefetch);
+	}
+
 	// alias :pop :receive
 
 	public boolean poppable() {
@@ -177,7 +434,7 @@ public class Channel<T> implements Serializable {
 		}
 	}
 
-	private void check_direction(Direction direction) {
+	void check_direction(Direction direction) {
 		if (this.direction == Direction.BIDIRECTIONAL) {
 			return;
 		}
@@ -186,6 +443,18 @@ public class Channel<T> implements Serializable {
 		}
 	}
 
+	/**
+	 * Sets how goroutines wait on this channel's sends and receives: spinning
+	 * hands values off faster at the cost of a busy core.
+	 */
+	public void setWaitStrategy(WaitStrategy strategy) {
+		getQueue().setWaitStrategy(strategy);
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return getQueue().getWaitStrategy();
+	}
+
 	public String getName() {
 		return name;
 	}
@@ -0,0 +1,225 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import juggler.errors.ChannelClosedError;
+
+/**
+ * Publishes the values received from a queue, completing when it is closed.
+ *
+ * Each subscription receives only as many values as its subscriber has
+ * requested. Values which are ready are drained in batches; when none are,
+ * the subscription registers a deferred receive whose notifier schedules
+ * the next delivery, so no goroutine waits on the queue in the meantime.
+ * Deliveries for one subscription run one at a time on the executor, and
+ * so do cancellation, errors and completion: other threads only record them
+ * and schedule a delivery, so the subscriber is never signalled from two
+ * threads at once. Several subscribers compete for values like several
+ * receivers.
+ */
+final class ChannelPublisher<T> implements Flow.Publisher<T> {
+
+	static final int BATCH = 64;
+
+	private final Queue<T> queue;
+
+	ChannelPublisher(Queue<T> queue) {
+		this.queue = queue;
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("subscriber");
+		}
+		Subscription subscription = new Subscription(subscriber);
+		subscriber.onSubscribe(subscription);
+		if (queue.isClosed()) {
+			subscription.schedule();
+		}
+	}
+
+	private final class Subscription implements Flow.Subscription, Runnable {
+
+		private final Flow.Subscriber<? super T> subscriber;
+		private final AtomicLong demand;
+		private final AtomicInteger scheduled;
+		private final List<T> batch;
+		private volatile boolean cancelled;
+		private volatile Throwable error;
+		// set only by deliveries, once the subscriber has been signalled
+		// for the last time
+		private volatile boolean done;
+		private Pop<T> pending;
+
+		Subscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+			this.demand = new AtomicLong();
+			this.scheduled = new AtomicInteger();
+			this.batch = new ArrayList<T>(BATCH);
+		}
+
+		@Override
+		public void request(long n) {
+			if (done) {
+				return;
+			}
+			if (n <= 0) {
+				fail(new IllegalArgumentException(
+						"non-positive subscription request: " + n));
+				return;
+			}
+			long current;
+			long next;
+			do {
+				current = demand.get();
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!demand.compareAndSet(current, next));
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		void schedule() {
+			if (scheduled.getAndIncrement() == 0) {
+				Juggler.go(this);
+			}
+		}
+
+		@Override
+		public void run() {
+			int missed = 1;
+			do {
+				deliver();
+				missed = scheduled.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private void deliver() {
+			if (done) {
+				return;
+			}
+			if (cancelled) {
+				done = true;
+				withdraw();
+				return;
+			}
+			Throwable failure = error;
+			if (failure != null) {
+				done = true;
+				withdraw();
+				subscriber.onError(failure);
+				return;
+			}
+			Pop<T> pop = pending;
+			if (pop != null) {
+				if (pop.received()) {
+					pending = null;
+					if (!next(pop.getObject())) {
+						return;
+					}
+				} else if (pop.isClosed()) {
+					complete();
+					return;
+				} else {
+					return;
+				}
+			}
+			try {
+				while (!done && !cancelled && demand.get() > 0) {
+					batch.clear();
+					if (queue.drainTo(batch, (int) Math.min(demand.get(), BATCH)) == 0) {
+						pending = queue.deferredPop(new Notifier<Pop<T>>() {
+							@Override
+							public Error notify(Pop<T> payload) {
+								Error error = super.notify(payload);
+								schedule();
+								return error;
+							}
+						});
+						return;
+					}
+					for (int i = 0; i < batch.size(); i++) {
+						if (!next(batch.get(i))) {
+							requeue(batch.subList(i + 1, batch.size()));
+							return;
+						}
+					}
+				}
+				if (!done && !cancelled && queue.isClosed()) {
+					// completion needs no demand
+					complete();
+				}
+			} catch (ChannelClosedError e) {
+				complete();
+			}
+		}
+
+		private boolean next(T value) {
+			if (demand.get() != Long.MAX_VALUE) {
+				demand.decrementAndGet();
+			}
+			try {
+				subscriber.onNext(value);
+				return true;
+			} catch (RuntimeException e) {
+				done = true;
+				withdraw();
+				return false;
+			}
+		}
+
+		/**
+		 * Takes back a registered receive after cancellation or an error.
+		 * A receive which completed first has already taken its value off
+		 * the queue; it was registered for demand the subscriber signalled,
+		 * so the value is still passed on.
+		 */
+		private void withdraw() {
+			Pop<T> pop = pending;
+			if (pop != null) {
+				pending = null;
+				if (!queue.remove_operation(pop) && pop.received()) {
+					next(pop.getObject());
+				}
+			}
+		}
+
+		/**
+		 * Hands back the values drained for a subscriber which failed, as
+		 * deferred sends which wait for the next receivers.
+		 */
+		private void requeue(List<T> values) {
+			try {
+				for (T value : values) {
+					queue.deferredPush(value);
+				}
+			} catch (ChannelClosedError e) {
+				// nobody is left to receive them
+			}
+		}
+
+		private void complete() {
+			if (!done) {
+				done = true;
+				subscriber.onComplete();
+			}
+		}
+
+		// Recorded for the next delivery to pass on
+		private void fail(Throwable error) {
+			if (this.error == null) {
+				this.error = error;
+			}
+			schedule();
+		}
+	}
+}
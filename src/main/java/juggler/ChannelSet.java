@@ -0,0 +1,229 @@
+package juggler;
+
+import java.util.ArrayDeque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.ReceiveError;
+
+/**
+ * Receives from whichever of many channels has a value, like a select with
+ * one receive case per channel, but without touching every channel on
+ * each receive. Each member channel tells the set when a send may have left
+ * it a value, and the set keeps the channels so signalled in a single ready
+ * queue, the way epoll keeps ready file descriptors. Waiting for the next
+ * value among thousands of channels costs O(1) amortized.
+ *
+ * Readiness is level triggered: a channel which still has values after a
+ * receive goes back to the end of the ready queue, so busy channels cannot
+ * starve the others. A member channel which is closed leaves the set.
+ *
+ * A channel may belong to only one set at a time. As with select, a null
+ * value cannot be told apart from an empty channel and is skipped.
+ */
+public class ChannelSet<T> {
+
+	public interface ReceiveBlock<T> {
+		void yield(Channel<T> channel, T value);
+	}
+
+	private static final class Member<T> implements Runnable {
+		final ChannelSet<T> set;
+		final Channel<T> channel;
+		final Queue<T> queue;
+
+		// guarded by the set's mutex
+		boolean queued;
+		boolean removed;
+
+		Member(ChannelSet<T> set, Channel<T> channel, Queue<T> queue) {
+			this.set = set;
+			this.channel = channel;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			set.ready(this);
+		}
+	}
+
+	private final Object mutex = new Object();
+	private final Map<Channel<T>, Member<T>> members = new IdentityHashMap<Channel<T>, Member<T>>();
+	private final ArrayDeque<Member<T>> ready = new ArrayDeque<Member<T>>();
+
+	/**
+	 * Adds a channel to the set. It is ready at once if it already holds a
+	 * value or has a sender waiting.
+	 *
+	 * @return false if the channel was already a member
+	 */
+	public boolean add(Channel<T> channel) {
+		channel.check_direction(Direction.RECEIVE);
+		Queue<T> queue = channel.getQueue();
+		Member<T> member = new Member<T>(this, channel, queue);
+		synchronized (mutex) {
+			if (members.containsKey(channel)) {
+				return false;
+			}
+			members.put(channel, member);
+		}
+		try {
+			queue.setReadyListener(member);
+		} catch (IllegalStateException e) {
+			synchronized (mutex) {
+				members.remove(channel);
+			}
+			throw e;
+		}
+		if (queue.poppable() || queue.isClosed()) {
+			ready(member);
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if the channel was not a member
+	 */
+	public boolean remove(Channel<T> channel) {
+		Member<T> member;
+		synchronized (mutex) {
+			member = members.remove(channel);
+			if (member == null) {
+				return false;
+			}
+			// left in the ready queue, if there, and skipped when reached
+			member.removed = true;
+		}
+		member.queue.setReadyListener(null);
+		return true;
+	}
+
+	public boolean contains(Channel<T> channel) {
+		synchronized (mutex) {
+			return members.containsKey(channel);
+		}
+	}
+
+	public int size() {
+		synchronized (mutex) {
+			return members.size();
+		}
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	/**
+	 * Waits for a value from any member channel.
+	 */
+	public T receive() throws ReceiveError {
+		return receive(false, 0L, null);
+	}
+
+	/**
+	 * Waits for a value from any member channel and hands it to the block
+	 * together with the channel it came from.
+	 */
+	public void receive(ReceiveBlock<T> blk) throws ReceiveError {
+		receive(false, 0L, blk);
+	}
+
+	/**
+	 * Waits up to timeout milliseconds for a value from any member channel.
+	 *
+	 * @return the value, or null if the timeout elapsed
+	 */
+	public T receive(long timeout) throws ReceiveError {
+		return receive(true, TimeUnit.MILLISECONDS.toNanos(timeout), null);
+	}
+
+	/**
+	 * Waits up to timeout milliseconds for a value from any member channel
+	 * and hands it to the block together with the channel it came from.
+	 *
+	 * @return false if the timeout elapsed
+	 */
+	public boolean receive(long timeout, ReceiveBlock<T> blk) throws ReceiveError {
+		return receive(true, TimeUnit.MILLISECONDS.toNanos(timeout), blk) != null;
+	}
+
+	private T receive(boolean timed, long nanos, ReceiveBlock<T> blk) {
+		long deadline = timed ? System.nanoTime() + nanos : 0L;
+		while (true) {
+			Member<T> member = next(timed, deadline);
+			if (member == null) {
+				return null;
+			}
+
+			T value;
+			try {
+				value = member.queue.tryPop();
+			} catch (ChannelClosedError e) {
+				remove(member.channel);
+				continue;
+			}
+			if (value == null) {
+				// another receiver got there first
+				continue;
+			}
+			if (member.queue.poppable()) {
+				ready(member);
+			}
+
+			if (blk != null) {
+				blk.yield(member.channel, value);
+			}
+			return value;
+		}
+	}
+
+	/**
+	 * Takes the next ready member. It is marked as no longer queued before
+	 * its channel is looked at, so a send which lands afterwards queues it
+	 * again and cannot be missed.
+	 */
+	private Member<T> next(boolean timed, long deadline) {
+		synchronized (mutex) {
+			while (true) {
+				Member<T> member = ready.pollFirst();
+				if (member != null) {
+					member.queued = false;
+					if (member.removed) {
+						continue;
+					}
+					return member;
+				}
+
+				try {
+					if (!timed) {
+						Blocking.wait(mutex);
+					} else {
+						long remaining = deadline - System.nanoTime();
+						if (remaining <= 0) {
+							return null;
+						}
+						Blocking.timedWait(mutex, remaining);
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ReceiveError();
+				}
+			}
+		}
+	}
+
+	private void ready(Member<T> member) {
+		synchronized (mutex) {
+			if (member.queued || member.removed) {
+				return;
+			}
+			member.queued = true;
+			ready.addLast(member);
+			mutex.notify();
+		}
+	}
+}
@@ -0,0 +1,137 @@
+package juggler;
+
+import java.util.AbstractCollection;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.ReceiveError;
+
+/**
+ * Receives from a queue until it is closed.
+ *
+ * Values are taken in batches: whatever is ready is drained at once, and
+ * only when nothing is ready does it block for a single value. Values
+ * already taken into a batch are lost to other receivers if the consumer
+ * stops early.
+ *
+ * Splitting hands out another spliterator receiving from the same queue,
+ * so each worker of a parallel stream competes for values. Splits are
+ * halved down to enough leaves for the common pool's parallelism.
+ */
+final class ChannelSpliterator<T> implements Spliterator<T> {
+
+	static final int BATCH = 64;
+
+	private final Queue<T> queue;
+	private final ArrayDeque<Object> batch;
+	private final Adder adder;
+	private int splits;
+	private boolean done;
+
+	/** Stands in for null values, which ArrayDeque cannot hold. */
+	private static final Object NULL = new Object();
+
+	ChannelSpliterator(Queue<T> queue) {
+		this(queue, 32 - Integer.numberOfLeadingZeros(
+				Math.max(1, ForkJoinPool.getCommonPoolParallelism() - 1)));
+	}
+
+	private ChannelSpliterator(Queue<T> queue, int splits) {
+		this.queue = queue;
+		this.splits = splits;
+		this.batch = new ArrayDeque<Object>(BATCH);
+		this.adder = new Adder();
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if (batch.isEmpty() && !fill()) {
+			return false;
+		}
+		action.accept(unwrap(batch.poll()));
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super T> action) {
+		while (!batch.isEmpty() || fill()) {
+			while (!batch.isEmpty()) {
+				action.accept(unwrap(batch.poll()));
+			}
+		}
+	}
+
+	@Override
+	public Spliterator<T> trySplit() {
+		if (splits <= 0 || done) {
+			return null;
+		}
+		splits -= 1;
+		return new ChannelSpliterator<T>(queue, splits);
+	}
+
+	@Override
+	public long estimateSize() {
+		return done && batch.isEmpty() ? 0 : Long.MAX_VALUE;
+	}
+
+	@Override
+	public int characteristics() {
+		return CONCURRENT;
+	}
+
+	/**
+	 * Blocks until at least one value is in the batch.
+	 *
+	 * @return false once the queue is closed
+	 */
+	private boolean fill() {
+		if (done) {
+			return false;
+		}
+		try {
+			if (queue.drainTo(adder, BATCH) == 0) {
+				batch.add(wrap(queue.pop()));
+				queue.drainTo(adder, BATCH - 1);
+			}
+			return true;
+		} catch (ReceiveError e) {
+			done = true;
+		} catch (ChannelClosedError e) {
+			done = true;
+		}
+		return !batch.isEmpty();
+	}
+
+	private Object wrap(T value) {
+		return value == null ? NULL : value;
+	}
+
+	@SuppressWarnings("unchecked")
+	private T unwrap(Object value) {
+		return value == NULL ? null : (T) value;
+	}
+
+	/** Appends drained values to the batch. */
+	private final class Adder extends AbstractCollection<T> {
+		@Override
+		public boolean add(T value) {
+			batch.add(wrap(value));
+			return true;
+		}
+
+		@Override
+		public Iterator<T> iterator() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public int size() {
+			return batch.size();
+		}
+	}
+}
@@ -0,0 +1,67 @@
+package juggler;
+
+import java.util.concurrent.Flow;
+
+import juggler.errors.ChannelClosedError;
+
+/**
+ * Sends everything a publisher emits into a queue.
+ *
+ * It requests prefetch values up front and sends each with a deferred
+ * push, so no goroutine waits on the queue. Every push that completes, by
+ * being buffered or taken, requests one more value, so at most prefetch
+ * pushes are ever waiting: the publisher runs no more than the buffer's
+ * capacity plus prefetch values ahead of receivers. Completion and errors
+ * are not passed on; whoever owns the channel closes it.
+ */
+final class ChannelSubscriber<T> implements Flow.Subscriber<T> {
+
+	private final Queue<T> queue;
+	private final int prefetch;
+	private volatile Flow.Subscription subscription;
+
+	ChannelSubscriber(Queue<T> queue, int prefetch) {
+		this.queue = queue;
+		this.prefetch = Math.max(1, prefetch);
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		subscription.request(prefetch);
+	}
+
+	@Override
+	public void onNext(T item) {
+		try {
+			queue.deferredPush(item, new Notifier<Push<T>>() {
+				@Override
+				public Error notify(Push<T> payload) {
+					Error error = super.notify(payload);
+					if (payload.sent()) {
+						subscription.request(1);
+					} else {
+						subscription.cancel();
+					}
+					return error;
+				}
+			});
+		} catch (ChannelClosedError e) {
+			subscription.cancel();
+		}
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		// the channel's owner decides when to close it
+	}
+
+	@Override
+	public void onComplete() {
+		// the channel's owner decides when to close it
+	}
+}
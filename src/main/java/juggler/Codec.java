@@ -0,0 +1,14 @@
+package juggler;
+
+/**
+ * Converts channel values to and from bytes, for channels which must hand
+ * over copies rather than references. Implementations must be thread-safe;
+ * a single codec instance is shared by every sender and receiver of a
+ * channel. Built-in codecs are available from {@link Codecs}.
+ */
+public interface Codec<T> {
+
+	byte[] encode(T value);
+
+	T decode(byte[] bytes);
+}
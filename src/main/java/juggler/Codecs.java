@@ -0,0 +1,325 @@
+package juggler;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+import org.apache.commons.lang.SerializationUtils;
+
+/**
+ * Built-in {@link Codec} implementations. The codecs for strings, boxed
+ * primitives and primitive arrays write the raw value with no type header
+ * and no reflection; anything else falls back to Java serialization.
+ *
+ * None of the built-in codecs accept null values.
+ */
+public final class Codecs {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private Codecs() {
+	}
+
+	/**
+	 * A codec which can tell, without encoding a value, the fewest bytes it
+	 * encodes to; a channel with no room for that many refuses the value
+	 * before allocating its bytes.
+	 */
+	abstract static class Sized<T> implements Codec<T> {
+
+		abstract int length(T value);
+	}
+
+	public static final Codec<byte[]> BYTES = new Sized<byte[]>() {
+		@Override
+		int length(byte[] value) {
+			return value.length;
+		}
+
+		@Override
+		public byte[] encode(byte[] value) {
+			return value.clone();
+		}
+
+		@Override
+		public byte[] decode(byte[] bytes) {
+			return bytes;
+		}
+	};
+
+	public static final Codec<String> STRING = new Sized<String>() {
+		@Override
+		int length(String value) {
+			// at least a byte per char in UTF-8
+			return value.length();
+		}
+
+		@Override
+		public byte[] encode(String value) {
+			return value.getBytes(UTF_8);
+		}
+
+		@Override
+		public String decode(byte[] bytes) {
+			return new String(bytes, UTF_8);
+		}
+	};
+
+	public static final Codec<Boolean> BOOLEAN = new Sized<Boolean>() {
+		@Override
+		int length(Boolean value) {
+			return 1;
+		}
+
+		@Override
+		public byte[] encode(Boolean value) {
+			return new byte[] { (byte) (value ? 1 : 0) };
+		}
+
+		@Override
+		public Boolean decode(byte[] bytes) {
+			return bytes[0] != 0;
+		}
+	};
+
+	public static final Codec<Byte> BYTE = new Sized<Byte>() {
+		@Override
+		int length(Byte value) {
+			return 1;
+		}
+
+		@Override
+		public byte[] encode(Byte value) {
+			return new byte[] { value };
+		}
+
+		@Override
+		public Byte decode(byte[] bytes) {
+			return bytes[0];
+		}
+	};
+
+	public static final Codec<Short> SHORT = new Sized<Short>() {
+		@Override
+		int length(Short value) {
+			return 2;
+		}
+
+		@Override
+		public byte[] encode(Short value) {
+			return ByteBuffer.allocate(2).putShort(value).array();
+		}
+
+		@Override
+		public Short decode(byte[] bytes) {
+			return ByteBuffer.wrap(bytes).getShort();
+		}
+	};
+
+	public static final Codec<Character> CHARACTER = new Sized<Character>() {
+		@Override
+		int length(Character value) {
+			return 2;
+		}
+
+		@Override
+		public byte[] encode(Character value) {
+			return ByteBuffer.allocate(2).putChar(value).array();
+		}
+
+		@Override
+		public Character decode(byte[] bytes) {
+			return ByteBuffer.wrap(bytes).getChar();
+		}
+	};
+
+	public static final Codec<Integer> INTEGER = new Sized<Integer>() {
+		@Override
+		int length(Integer value) {
+			return 4;
+		}
+
+		@Override
+		public byte[] encode(Integer value) {
+			return ByteBuffer.allocate(4).putInt(value).array();
+		}
+
+		@Override
+		public Integer decode(byte[] bytes) {
+			return ByteBuffer.wrap(bytes).getInt();
+		}
+	};
+
+	public static final Codec<Long> LONG = new Sized<Long>() {
+		@Override
+		int length(Long value) {
+			return 8;
+		}
+
+		@Override
+		public byte[] encode(Long value) {
+			return ByteBuffer.allocate(8).putLong(value).array();
+		}
+
+		@Override
+		public Long decode(byte[] bytes) {
+			return ByteBuffer.wrap(bytes).getLong();
+		}
+	};
+
+	public static final Codec<Float> FLOAT = new Sized<Float>() {
+		@Override
+		int length(Float value) {
+			return 4;
+		}
+
+		@Override
+		public byte[] encode(Float value) {
+			return ByteBuffer.allocate(4).putFloat(value).array();
+		}
+
+		@Override
+		public Float decode(byte[] bytes) {
+			return ByteBuffer.wrap(bytes).getFloat();
+		}
+	};
+
+	public static final Codec<Double> DOUBLE = new Sized<Double>() {
+		@Override
+		int length(Double value) {
+			return 8;
+		}
+
+		@Override
+		public byte[] encode(Double value) {
+			return ByteBuffer.allocate(8).putDouble(value).array();
+		}
+
+		@Override
+		public Double decode(byte[] bytes) {
+			return ByteBuffer.wrap(bytes).getDouble();
+		}
+	};
+
+	public static final Codec<int[]> INTS = new Sized<int[]>() {
+		@Override
+		int length(int[] value) {
+			return value.length * 4;
+		}
+
+		@Override
+		public byte[] encode(int[] value) {
+			ByteBuffer buf = ByteBuffer.allocate(value.length * 4);
+			buf.asIntBuffer().put(value);
+			return buf.array();
+		}
+
+		@Override
+		public int[] decode(byte[] bytes) {
+			int[] value = new int[bytes.length / 4];
+			ByteBuffer.wrap(bytes).asIntBuffer().get(value);
+			return value;
+		}
+	};
+
+	public static final Codec<long[]> LONGS = new Sized<long[]>() {
+		@Override
+		int length(long[] value) {
+			return value.length * 8;
+		}
+
+		@Override
+		public byte[] encode(long[] value) {
+			ByteBuffer buf = ByteBuffer.allocate(value.length * 8);
+			buf.asLongBuffer().put(value);
+			return buf.array();
+		}
+
+		@Override
+		public long[] decode(byte[] bytes) {
+			long[] value = new long[bytes.length / 8];
+			ByteBuffer.wrap(bytes).asLongBuffer().get(value);
+			return value;
+		}
+	};
+
+	public static final Codec<double[]> DOUBLES = new Sized<double[]>() {
+		@Override
+		int length(double[] value) {
+			return value.length * 8;
+		}
+
+		@Override
+		public byte[] encode(double[] value) {
+			ByteBuffer buf = ByteBuffer.allocate(value.length * 8);
+			buf.asDoubleBuffer().put(value);
+			return buf.array();
+		}
+
+		@Override
+		public double[] decode(byte[] bytes) {
+			double[] value = new double[bytes.length / 8];
+			ByteBuffer.wrap(bytes).asDoubleBuffer().get(value);
+			return value;
+		}
+	};
+
+	private static final Codec<Object> SERIALIZATION = new Codec<Object>() {
+		@Override
+		public byte[] encode(Object value) {
+			return SerializationUtils.serialize((Serializable) value);
+		}
+
+		@Override
+		public Object decode(byte[] bytes) {
+			return SerializationUtils.deserialize(bytes);
+		}
+	};
+
+	/**
+	 * Java serialization, for any Serializable value.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Codec<T> serialization() {
+		return (Codec<T>) SERIALIZATION;
+	}
+
+	/**
+	 * The built-in codec for values of exactly the given class, or Java
+	 * serialization if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> Codec<T> forClass(Class<T> type) {
+		Codec<?> codec;
+		if (type == String.class) {
+			codec = STRING;
+		} else if (type == Integer.class) {
+			codec = INTEGER;
+		} else if (type == Long.class) {
+			codec = LONG;
+		} else if (type == Double.class) {
+			codec = DOUBLE;
+		} else if (type == Float.class) {
+			codec = FLOAT;
+		} else if (type == Short.class) {
+			codec = SHORT;
+		} else if (type == Byte.class) {
+			codec = BYTE;
+		} else if (type == Character.class) {
+			codec = CHARACTER;
+		} else if (type == Boolean.class) {
+			codec = BOOLEAN;
+		} else if (type == byte[].class) {
+			codec = BYTES;
+		} else if (type == int[].class) {
+			codec = INTS;
+		} else if (type == long[].class) {
+			codec = LONGS;
+		} else if (type == double[].class) {
+			codec = DOUBLES;
+		} else {
+			codec = SERIALIZATION;
+		}
+		return (Codec<T>) codec;
+	}
+}
@@ -0,0 +1,108 @@
+package juggler;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import juggler.errors.ConstructorMissingError;
+
+/**
+ * Instantiates Runnable classes for {@link Juggler#go(Class, Object...)}.
+ *
+ * The constructor matching a class and the runtime classes of its arguments
+ * is resolved once, then kept as a spreading MethodHandle of type
+ * (Object[])Runnable so later launches skip the reflective lookup.
+ */
+final class Constructors {
+
+	private static final MethodType SPREAD_TYPE = MethodType.methodType(
+			Runnable.class, Object[].class);
+
+	private static final ClassValue<ConcurrentMap<List<Class<?>>, MethodHandle>> HANDLES =
+			new ClassValue<ConcurrentMap<List<Class<?>>, MethodHandle>>() {
+		@Override
+		protected ConcurrentMap<List<Class<?>>, MethodHandle> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<List<Class<?>>, MethodHandle>();
+		}
+	};
+
+	private Constructors() {
+	}
+
+	public static Runnable newInstance(Class<? extends Runnable> type,
+			Object... args) {
+		Class<?>[] shape = new Class<?>[args.length];
+		for (int i = 0; i < args.length; i++) {
+			shape[i] = args[i] == null ? null : args[i].getClass();
+		}
+		List<Class<?>> key = Arrays.asList(shape);
+
+		ConcurrentMap<List<Class<?>>, MethodHandle> handles = HANDLES.get(type);
+		MethodHandle handle = handles.get(key);
+		if (handle == null) {
+			handle = resolve(type, shape);
+			MethodHandle existing = handles.putIfAbsent(key, handle);
+			if (existing != null) {
+				handle = existing;
+			}
+		}
+
+		try {
+			return (Runnable) handle.invokeExact(args);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (java.lang.Error e) {
+			throw e;
+		} catch (Throwable t) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	private static MethodHandle resolve(Class<?> type, Class<?>[] shape) {
+		for (Constructor<?> ctor : type.getDeclaredConstructors()) {
+			if (!accepts(ctor.getParameterTypes(), shape)) {
+				continue;
+			}
+			try {
+				ctor.setAccessible(true);
+				return MethodHandles.lookup().unreflectConstructor(ctor)
+						.asSpreader(Object[].class, shape.length)
+						.asType(SPREAD_TYPE);
+			} catch (IllegalAccessException e) {
+				throw new ConstructorMissingError(String.format(
+						"Constructor %s is not accessible", ctor));
+			}
+		}
+		throw new ConstructorMissingError(String.format(
+				"No constructor of %s accepts %s", type.getName(),
+				Arrays.toString(shape)));
+	}
+
+	private static boolean accepts(Class<?>[] params, Class<?>[] shape) {
+		if (params.length != shape.length) {
+			return false;
+		}
+		for (int i = 0; i < params.length; i++) {
+			if (shape[i] == null) {
+				if (params[i].isPrimitive()) {
+					return false;
+				}
+			} else if (!box(params[i]).isAssignableFrom(shape[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static Class<?> box(Class<?> type) {
+		if (!type.isPrimitive()) {
+			return type;
+		}
+		return MethodType.methodType(type).wrap().returnType();
+	}
+}
@@ -0,0 +1,32 @@
+package juggler;
+
+/**
+ * A channel of unboxed double values. Values are kept in a double[] buffer, so
+ * sending and receiving never box, serialize or allocate.
+ *
+ * A capacity of zero makes the channel unbuffered, as with {@link Channel}.
+ */
+public class DoubleChannel extends PrimitiveChannel {
+
+	private final double[] values;
+
+	public DoubleChannel() {
+		this(0);
+	}
+
+	public DoubleChannel(int max) {
+		super(max);
+		this.values = new double[slots()];
+	}
+
+	public synchronized void send(double value) {
+		values[begin_send()] = value;
+		end_send();
+	}
+
+	public synchronized double receiveDouble() {
+		double value = values[begin_receive()];
+		end_receive();
+		return value;
+	}
+}
@@ -0,0 +1,501 @@
+package juggler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import juggler.errors.Rollback;
+
+/**
+ * A queue kept in memory-mapped, append-only segment files in a directory,
+ * so values sent but not yet received survive a restart.
+ *
+ * Each record is a four byte header holding the payload length plus one,
+ * followed by the payload encoded with the codec; a zero header marks the
+ * end of the log and -1 marks a segment which was closed early because the
+ * next record did not fit. Sends never block.
+ *
+ * Writes are group committed: a sender returns once its record has been
+ * forced to disk, and whichever waiting sender gets the commit lock first
+ * forces the segment for every record appended so far. The receiver's
+ * position is checkpointed to a small mapped file every checkpoint_interval
+ * receives, after every batch and on close, and segments wholly before the
+ * checkpoint are deleted. On reopening the directory, receiving resumes from
+ * the last checkpoint, so at most checkpoint_interval - 1 values are
+ * delivered again after a crash.
+ *
+ * Deferred operations, as a select or an async receive registers, wait in
+ * the usual wait lists and are completed by the next send before it
+ * releases the mutex. A deferred send is appended and forced at once, under
+ * the mutex, so it too completes only once on disk.
+ */
+final class Durable<T> extends Queue<T> {
+
+	static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+	static final int DEFAULT_CHECKPOINT_INTERVAL = 1024;
+
+	private static final int HEADER = 4;
+	private static final int END_OF_SEGMENT = -1;
+	private static final String CHECKPOINT = "checkpoint";
+
+	private final File directory;
+	private final Codec<T> codec;
+	private final int segment_size;
+	private final int checkpoint_interval;
+
+	private final MappedByteBuffer checkpoint;
+	private MappedByteBuffer write_segment;
+	private long write_index;
+	private int write_offset;
+	private MappedByteBuffer read_segment;
+	private long read_index;
+	private int read_offset;
+	private long oldest_index;
+
+	private long count;
+	private int unchecked;
+
+	private final Object commit_lock;
+	private long appended;
+	private long committed;
+
+	private final Push.PushBlock<T> offer = new Push.PushBlock<T>() {
+		@Override
+		public void yield(T obj) {
+			append(encode(obj));
+			appended += 1;
+			count += 1;
+			write_segment.force();
+			signal_ready();
+		}
+	};
+
+	private final Pop.PopBlock<T> poll = new Pop.PopBlock<T>() {
+		@Override
+		public T yield() {
+			if (count == 0) {
+				throw new Rollback();
+			}
+			byte[] payload = read();
+			unchecked += 1;
+			if (unchecked >= checkpoint_interval) {
+				write_checkpoint();
+			}
+			return codec.decode(payload);
+		}
+	};
+
+	public Durable(File directory, Codec<T> codec) {
+		this(directory, codec, DEFAULT_SEGMENT_SIZE, DEFAULT_CHECKPOINT_INTERVAL);
+	}
+
+	public Durable(File directory, Codec<T> codec, int segment_size,
+			int checkpoint_interval) {
+		if (segment_size <= 2 * HEADER) {
+			throw new InvalidQueueSizeError(String.format(
+					"segment size must be more than %d bytes", 2 * HEADER));
+		}
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		this.directory = directory;
+		this.codec = codec;
+		this.segment_size = segment_size;
+		this.checkpoint_interval = Math.max(1, checkpoint_interval);
+		this.commit_lock = new Object();
+
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new UncheckedIOException(new IOException(
+					"cannot create " + directory));
+		}
+		this.checkpoint = map(new File(directory, CHECKPOINT), 12);
+		this.read_index = checkpoint.getLong(0);
+		this.read_offset = checkpoint.getInt(8);
+		this.oldest_index = read_index;
+		this.read_segment = map_segment(read_index);
+		recover();
+	}
+
+	/**
+	 * Walks the log from the checkpoint to find the end and count the
+	 * records still to be received.
+	 */
+	private void recover() {
+		long index = read_index;
+		int offset = read_offset;
+		MappedByteBuffer segment = read_segment;
+		while (true) {
+			int header = offset + HEADER <= segment_size ? segment.getInt(offset) : END_OF_SEGMENT;
+			if (header == 0) {
+				break;
+			}
+			if (header == END_OF_SEGMENT) {
+				if (!segment_file(index + 1).exists()) {
+					break;
+				}
+				index += 1;
+				offset = 0;
+				segment = map_segment(index);
+				continue;
+			}
+			offset += HEADER + header - 1;
+			count += 1;
+		}
+		write_index = index;
+		write_offset = offset;
+		write_segment = segment;
+		appended = count;
+		committed = count;
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return true;
+	}
+
+	@Override
+	public boolean isUnbuffered() {
+		return false;
+	}
+
+	@Override
+	public boolean pushable() {
+		return true;
+	}
+
+	@Override
+	public boolean poppable() {
+		synchronized (mutex) {
+			return count > 0;
+		}
+	}
+
+	@Override
+	public void push(T object) {
+		byte[] payload = encode(object);
+		long sequence;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			append(payload);
+			appended += 1;
+			sequence = appended;
+			count += 1;
+			process();
+			mutex.notifyAll();
+		}
+		commit(sequence);
+		signal_ready();
+	}
+
+	@Override
+	public void pushAll(Collection<? extends T> objects) {
+		List<byte[]> payloads = new ArrayList<byte[]>(objects.size());
+		for (T object : objects) {
+			payloads.add(encode(object));
+		}
+		long sequence;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			for (byte[] payload : payloads) {
+				append(payload);
+			}
+			appended += payloads.size();
+			sequence = appended;
+			count += payloads.size();
+			process();
+			mutex.notifyAll();
+		}
+		commit(sequence);
+		signal_ready();
+	}
+
+	private byte[] encode(T object) {
+		byte[] payload = codec.encode(object);
+		if (2 * HEADER + payload.length > segment_size) {
+			throw new InvalidQueueSizeError(String.format(
+					"a value of %d bytes can never fit in a %d byte segment",
+					payload.length, segment_size));
+		}
+		return payload;
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private void append(byte[] payload) {
+		if (write_offset + 2 * HEADER + payload.length > segment_size) {
+			if (write_offset + HEADER <= segment_size) {
+				write_segment.putInt(write_offset, END_OF_SEGMENT);
+			}
+			write_segment.force();
+			write_index += 1;
+			write_offset = 0;
+			write_segment = map_segment(write_index);
+		}
+		write_segment.position(write_offset + HEADER);
+		write_segment.put(payload);
+		// the header goes last so a reader never sees a partial record
+		write_segment.putInt(write_offset, payload.length + 1);
+		write_offset += HEADER + payload.length;
+	}
+
+	/**
+	 * Returns once the record with the given sequence number is on disk.
+	 */
+	private void commit(long sequence) {
+		synchronized (commit_lock) {
+			if (committed >= sequence) {
+				return;
+			}
+			long target;
+			MappedByteBuffer segment;
+			synchronized (mutex) {
+				target = appended;
+				segment = write_segment;
+			}
+			segment.force();
+			committed = target;
+		}
+	}
+
+	@Override
+	public T pop() {
+		byte[] payload;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (count == 0) {
+				await();
+			}
+			payload = read();
+			unchecked += 1;
+			if (unchecked >= checkpoint_interval) {
+				write_checkpoint();
+			}
+		}
+		return codec.decode(payload);
+	}
+
+	/**
+	 * Sends never block, so this is the same as push.
+	 */
+	@Override
+	public boolean tryPush(T object) {
+		push(object);
+		return true;
+	}
+
+	@Override
+	public boolean push(T object, long timeout, TimeUnit unit) {
+		push(object);
+		return true;
+	}
+
+	@Override
+	public T tryPop() {
+		return pop(0L, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public T pop(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		byte[] payload;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (count == 0) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return null;
+				}
+				try {
+					Blocking.timedWait(mutex, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ReceiveError();
+				}
+				if (isClosed()) {
+					throw new ReceiveError();
+				}
+			}
+			payload = read();
+			unchecked += 1;
+			if (unchecked >= checkpoint_interval) {
+				write_checkpoint();
+			}
+		}
+		return codec.decode(payload);
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (payloads.size() < max && count > 0) {
+				payloads.add(read());
+			}
+			if (!payloads.isEmpty()) {
+				write_checkpoint();
+			}
+		}
+		for (byte[] payload : payloads) {
+			into.add(codec.decode(payload));
+		}
+		return payloads.size();
+	}
+
+	@Override
+	public List<T> popBatch(int max, long timeout, TimeUnit unit) {
+		List<T> batch = new ArrayList<T>();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			long remaining = deadline - System.nanoTime();
+			while (count == 0 && remaining > 0) {
+				try {
+					Blocking.timedWait(mutex, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				if (isClosed()) {
+					throw new ReceiveError();
+				}
+				remaining = deadline - System.nanoTime();
+			}
+		}
+		try {
+			drainTo(batch, max);
+		} catch (ChannelClosedError e) {
+			// closed since the wait ended
+			throw new ReceiveError();
+		}
+		return batch;
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private byte[] read() {
+		int header = read_offset + HEADER <= segment_size ? read_segment.getInt(read_offset) : END_OF_SEGMENT;
+		if (header == END_OF_SEGMENT) {
+			read_index += 1;
+			read_offset = 0;
+			read_segment = read_index == write_index ? write_segment : map_segment(read_index);
+			header = read_segment.getInt(0);
+		}
+		byte[] payload = new byte[header - 1];
+		read_segment.position(read_offset + HEADER);
+		read_segment.get(payload);
+		read_offset += HEADER + payload.length;
+		count -= 1;
+		return payload;
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private void write_checkpoint() {
+		checkpoint.putLong(0, read_index);
+		checkpoint.putInt(8, read_offset);
+		checkpoint.force();
+		unchecked = 0;
+		while (oldest_index < read_index) {
+			segment_file(oldest_index).delete();
+			oldest_index += 1;
+		}
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private void await() {
+		boolean interrupted = false;
+		try {
+			Blocking.wait(mutex);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			interrupted = true;
+		}
+		if (interrupted || isClosed()) {
+			throw new ReceiveError();
+		}
+	}
+
+	/**
+	 * Refuses a value which could never fit before registering it.
+	 */
+	@Override
+	public Push<T> deferredPush(T object, Notifier<Push<T>> notifier) {
+		encode(object);
+		return super.deferredPush(object, notifier);
+	}
+
+	/**
+	 * Checkpoints the receiver and forces the log. Unlike other queues the
+	 * values not yet received are kept, for the next queue opened on the
+	 * same directory.
+	 */
+	@Override
+	public void close() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			write_checkpoint();
+			write_segment.force();
+			super.close();
+			mutex.notifyAll();
+		}
+	}
+
+	@Override
+	protected void process() {
+		if (complete_waiting(poll, offer)) {
+			mutex.notifyAll();
+		}
+	}
+
+	private File segment_file(long index) {
+		return new File(directory, String.format("%016d.segment", index));
+	}
+
+	private MappedByteBuffer map_segment(long index) {
+		return map(segment_file(index), segment_size);
+	}
+
+	private static MappedByteBuffer map(File file, int size) {
+		try {
+			FileChannel channel = FileChannel.open(file.toPath(),
+					StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				return channel.map(MapMode.READ_WRITE, 0, size);
+			} finally {
+				channel.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	long size() {
+		synchronized (mutex) {
+			return count;
+		}
+	}
+}
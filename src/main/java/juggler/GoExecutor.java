@@ -0,0 +1,26 @@
+package juggler;
+
+/**
+ * Launches goroutines on behalf of {@link Juggler#go(Runnable)}.
+ *
+ * Implementations trade throughput against latency: a thread per goroutine
+ * lets every goroutine block on a channel independently, whereas a bounded
+ * pool or a single loop caps the number of goroutines that can be parked at
+ * once. Built-in implementations are available from {@link GoExecutors}.
+ */
+public interface GoExecutor {
+
+	/**
+	 * Schedules the runnable to run concurrently with the caller.
+	 *
+	 * @return the thread dedicated to the goroutine, or null if the goroutine
+	 *         shares a pooled thread with others
+	 */
+	Thread go(Runnable runnable);
+
+	/**
+	 * Stops accepting goroutines. Goroutines already scheduled run to
+	 * completion.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,147 @@
+package juggler;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Built-in {@link GoExecutor} implementations.
+ *
+ * Goroutines which block on channels hold on to their thread, so the pooled
+ * executors can deadlock when more goroutines wait on each other than there
+ * are threads. Prefer {@link #virtualThreads()} unless the goroutines are
+ * short-lived and non-blocking.
+ */
+public final class GoExecutors {
+
+	/**
+	 * Thread.startVirtualThread(Runnable) on Java 21+, null on older JVMs
+	 * where goroutines fall back to daemon platform threads.
+	 */
+	private static final Method START_VIRTUAL_THREAD = virtualThreadStarter();
+
+	private static final GoExecutor VIRTUAL_THREADS = new ThreadPerGoroutine();
+
+	private GoExecutors() {
+	}
+
+	/**
+	 * One virtual thread per goroutine, or one daemon platform thread per
+	 * goroutine on JVMs without virtual threads.
+	 */
+	public static GoExecutor virtualThreads() {
+		return VIRTUAL_THREADS;
+	}
+
+	/**
+	 * A fixed pool of daemon platform threads with an unbounded run queue.
+	 */
+	public static GoExecutor platformPool(int nThreads) {
+		return new Pooled(new ThreadPoolExecutor(nThreads, nThreads, 0L,
+				TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new DaemonThreadFactory("juggler-pool-")));
+	}
+
+	/**
+	 * A ForkJoinPool in async (FIFO) mode, suited to event-style goroutines
+	 * which are never joined.
+	 */
+	public static GoExecutor forkJoin(int parallelism) {
+		return new Pooled(new ForkJoinPool(parallelism,
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true));
+	}
+
+	/**
+	 * A work-stealing pool with LIFO local queues and one worker per
+	 * available processor, for CPU-bound goroutine graphs.
+	 */
+	public static WorkStealingExecutor workStealing() {
+		return new WorkStealingExecutor();
+	}
+
+	public static WorkStealingExecutor workStealing(int parallelism) {
+		return new WorkStealingExecutor(parallelism);
+	}
+
+	/**
+	 * A single daemon thread running goroutines one after another, in the
+	 * order they were launched.
+	 */
+	public static GoExecutor singleThreaded() {
+		return platformPool(1);
+	}
+
+	private static final class ThreadPerGoroutine implements GoExecutor {
+
+		@Override
+		public Thread go(Runnable runnable) {
+			if (START_VIRTUAL_THREAD != null) {
+				try {
+					return (Thread) START_VIRTUAL_THREAD.invoke(null, runnable);
+				} catch (Exception e) {
+					// fall through to a platform thread
+				}
+			}
+			Thread th = new Thread(runnable);
+			th.setDaemon(true);
+			th.start();
+			return th;
+		}
+
+		@Override
+		public void shutdown() {
+			// nothing to release
+		}
+	}
+
+	private static final class Pooled implements GoExecutor {
+
+		private final ExecutorService service;
+
+		Pooled(ExecutorService service) {
+			this.service = service;
+		}
+
+		@Override
+		public Thread go(Runnable runnable) {
+			service.execute(runnable);
+			return null;
+		}
+
+		@Override
+		public void shutdown() {
+			service.shutdown();
+		}
+	}
+
+	private static final class DaemonThreadFactory implements ThreadFactory {
+
+		private final String prefix;
+		private final AtomicInteger count;
+
+		DaemonThreadFactory(String prefix) {
+			this.prefix = prefix;
+			this.count = new AtomicInteger();
+		}
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread th = new Thread(runnable, prefix + count.incrementAndGet());
+			th.setDaemon(true);
+			return th;
+		}
+	}
+
+	private static Method virtualThreadStarter() {
+		try {
+			return Thread.class.getMethod("startVirtualThread", Runnable.class);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+}
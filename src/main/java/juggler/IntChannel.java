@@ -0,0 +1,32 @@
+package juggler;
+
+/**
+ * A channel of unboxed int values. Values are kept in an int[] buffer, so
+ * sending and receiving never box, serialize or allocate.
+ *
+ * A capacity of zero makes the channel unbuffered, as with {@link Channel}.
+ */
+public class IntChannel extends PrimitiveChannel {
+
+	private final int[] values;
+
+	public IntChannel() {
+		this(0);
+	}
+
+	public IntChannel(int max) {
+		super(max);
+		this.values = new int[slots()];
+	}
+
+	public synchronized void send(int value) {
+		values[begin_send()] = value;
+		end_send();
+	}
+
+	public synchronized int receiveInt() {
+		int value = values[begin_receive()];
+		end_receive();
+		return value;
+	}
+}
@@ -2,6 +2,8 @@ package juggler;
 
 public class Juggler {
 
+	private static volatile GoExecutor executor = GoExecutors.virtualThreads();
+
 	private Juggler() {
 	}
 
@@ -21,61 +23,89 @@ public class Juggler {
         public void run(T arg1, U arg2, V arg3, X arg4);
     }
 
+	/**
+	 * Runs the runnable concurrently on the global {@link GoExecutor}.
+	 *
+	 * @return the goroutine's thread, or null when it runs on a pooled thread
+	 */
 	public static final Thread go(Runnable runnable) {
-		Thread th = new Thread(runnable);
-        th.run();
-        return th;
+		return start(runnable);
     }
 
 
+	/**
+	 * Instantiates the class with the constructor matching the arguments
+	 * and runs the instance concurrently on the global {@link GoExecutor}.
+	 */
 	public static Thread go(Class<? extends Runnable> class1, Object...args) {
-        return null;
+        return start(Constructors.newInstance(class1, args));
 	}
 
     public static <T> Thread go(final Consumer<T> consumer, final T arg) {
-        Thread th = new Thread(new Runnable() {
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
                 consumer.run(arg);
             }
-        });
-        th.run();
-        return th;
+        };
+        return start(runnable);
     }
 
     public static <T, U> Thread go(final BiConsumer<T, U> consumer,
                                    final T arg1, final U arg2) {
-        Thread th = new Thread(new Runnable() {
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
                 consumer.run(arg1, arg2);
             }
-        });
-        th.run();
-        return th;
+        };
+        return start(runnable);
     }
 
     public static <T, U, V> Thread go(final TriConsumer<T, U, V> consumer,
                                       final T arg1, final U arg2, final V arg3) {
-        Thread th = new Thread(new Runnable() {
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
                 consumer.run(arg1, arg2, arg3);
             }
-        });
-        th.run();
-        return th;
+        };
+        return start(runnable);
     }
 
     public static <T, U, V, X> Thread go(final QuadConsumer<T, U, V, X> consumer,
                                       final T arg1, final U arg2, final V arg3, final X arg4) {
-        Thread th = new Thread(new Runnable() {
+        Runnable runnable = new Runnable() {
             @Override
             public void run() {
                 consumer.run(arg1, arg2, arg3, arg4);
             }
-        });
-        th.run();
-        return th;
+        };
+        return start(runnable);
+    }
+
+    /**
+     * Launches the runnable on the given executor instead of the global one.
+     */
+    public static Thread go(GoExecutor executor, Runnable runnable) {
+        return executor.go(runnable);
+    }
+
+    /**
+     * Sets the executor used by every go(...) call without an explicit one.
+     */
+    public static void setExecutor(GoExecutor executor) {
+        if (executor == null) {
+            throw new NullPointerException("executor");
+        }
+        Juggler.executor = executor;
+    }
+
+    public static GoExecutor getExecutor() {
+        return executor;
+    }
+
+    private static Thread start(Runnable runnable) {
+        return executor.go(runnable);
     }
 }
@@ -0,0 +1,32 @@
+package juggler;
+
+/**
+ * A channel of unboxed long values. Values are kept in a long[] buffer, so
+ * sending and receiving never box, serialize or allocate.
+ *
+ * A capacity of zero makes the channel unbuffered, as with {@link Channel}.
+ */
+public class LongChannel extends PrimitiveChannel {
+
+	private final long[] values;
+
+	public LongChannel() {
+		this(0);
+	}
+
+	public LongChannel(int max) {
+		super(max);
+		this.values = new long[slots()];
+	}
+
+	public synchronized void send(long value) {
+		values[begin_send()] = value;
+		end_send();
+	}
+
+	public synchronized long receiveLong() {
+		long value = values[begin_receive()];
+		end_receive();
+		return value;
+	}
+}
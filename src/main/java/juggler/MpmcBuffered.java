@@ -0,0 +1,499 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import juggler.errors.Rollback;
+
+/**
+ * A buffered queue for any number of sending and receiving goroutines which
+ * does not lock while there is room to send or a value to receive.
+ *
+ * Each slot of the ring carries a sequence number telling which lap of the
+ * ring it is ready for. A sender claims the slot at the tail by CAS when its
+ * sequence equals the tail position, writes the value and advances the
+ * sequence by one; a receiver claims the slot at the head when its sequence
+ * is one past the head position, takes the value and advances the sequence
+ * by a whole lap. The head and tail counters sit 128 bytes apart.
+ *
+ * Only a goroutine which finds the ring full, or empty, takes wait_lock and
+ * parks on a condition; the other side signals it after its next operation.
+ * Parked goroutines also recheck the ring every millisecond, as a backstop
+ * against a signal racing with the wait.
+ *
+ * Deferred operations, as a select or an async send registers, wait in the
+ * usual wait lists and are completed under the mutex by whichever send or
+ * receive makes room or a value for them, which also signals not_full or
+ * not_empty as it goes. While any are registered, new sends and receives go
+ * through the wait lists behind them, so a goroutine's async and blocking
+ * sends stay in order.
+ */
+final class MpmcBuffered<T> extends Queue<T> {
+
+	private static final int SPINS = 64;
+	private static final long BACKSTOP_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/** Stands in for null values, since an empty slot reads as null. */
+	private static final Object NULL = new Object();
+
+	/** Slot offsets into counters, 16 longs (128 bytes) apart. */
+	private static final int HEAD = 15;
+	private static final int TAIL = 31;
+
+	private final int max;
+	// one slot cannot tell a full lap from an empty one, so max 1 uses two
+	private final int slots;
+	private final AtomicReferenceArray<Object> ring;
+	private final AtomicLongArray sequences;
+	private final AtomicLongArray counters;
+
+	private final Lock wait_lock;
+	private final Condition not_full;
+	private final Condition not_empty;
+	private final AtomicInteger waiting_pushes;
+	private final AtomicInteger waiting_pops;
+
+	// the number of operations in the wait lists
+	private volatile int registered;
+
+	private final Push.PushBlock<T> offer = new Push.PushBlock<T>() {
+		@Override
+		public void yield(T obj) {
+			if (!offer(obj == null ? NULL : obj)) {
+				throw new Rollback();
+			}
+			if (waiting_pops.get() > 0) {
+				signal(not_empty);
+			}
+			signal_ready();
+		}
+	};
+
+	private final Pop.PopBlock<T> poll = new Pop.PopBlock<T>() {
+		@Override
+		public T yield() {
+			Object value = poll();
+			if (value == null) {
+				throw new Rollback();
+			}
+			if (waiting_pushes.get() > 0) {
+				signal(not_full);
+			}
+			return unwrap(value);
+		}
+	};
+
+	public MpmcBuffered(int max) {
+		if (max < 1) {
+			throw new InvalidQueueSizeError("queue size must be at least 1");
+		}
+		this.max = max;
+		this.slots = Math.max(max, 2);
+		this.ring = new AtomicReferenceArray<Object>(slots);
+		this.sequences = new AtomicLongArray(slots);
+		for (int i = 0; i < slots; i++) {
+			sequences.set(i, i);
+		}
+		this.counters = new AtomicLongArray(TAIL + 17);
+
+		this.wait_lock = new ReentrantLock();
+		this.not_full = wait_lock.newCondition();
+		this.not_empty = wait_lock.newCondition();
+		this.waiting_pushes = new AtomicInteger();
+		this.waiting_pops = new AtomicInteger();
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return true;
+	}
+
+	@Override
+	public boolean isUnbuffered() {
+		return false;
+	}
+
+	@Override
+	public boolean pushable() {
+		return counters.get(TAIL) - counters.get(HEAD) < max;
+	}
+
+	@Override
+	public boolean poppable() {
+		return counters.get(TAIL) > counters.get(HEAD);
+	}
+
+	@Override
+	public void push(T object) {
+		if (registered != 0) {
+			super.push(object);
+			return;
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		Object value = object == null ? NULL : outgoing(object);
+		for (int spins = 0; !offer(value); spins++) {
+			if (spins >= SPINS) {
+				await_not_full(value, false, 0L);
+				break;
+			}
+		}
+		if (waiting_pops.get() > 0) {
+			signal(not_empty);
+		}
+		complete_registered();
+		signal_ready();
+	}
+
+	@Override
+	public T pop() {
+		if (registered != 0) {
+			return super.pop();
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		Object value = poll();
+		for (int spins = 0; value == null; spins++) {
+			if (spins >= SPINS) {
+				value = await_not_empty(false, 0L);
+				break;
+			}
+			value = poll();
+		}
+		if (waiting_pushes.get() > 0) {
+			signal(not_full);
+		}
+		complete_registered();
+		return unwrap(value);
+	}
+
+	@Override
+	public boolean tryPush(T object) {
+		if (registered != 0) {
+			return super.tryPush(object);
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		if (!pushable() || !offer(object == null ? NULL : outgoing(object))) {
+			return false;
+		}
+		if (waiting_pops.get() > 0) {
+			signal(not_empty);
+		}
+		complete_registered();
+		signal_ready();
+		return true;
+	}
+
+	@Override
+	public boolean push(T object, long timeout, TimeUnit unit) {
+		if (registered != 0) {
+			return super.push(object, timeout, unit);
+		}
+		if (tryPush(object)) {
+			return true;
+		}
+		if (timeout <= 0) {
+			return false;
+		}
+		Object value = object == null ? NULL : outgoing(object);
+		if (!await_not_full(value, true, System.nanoTime() + unit.toNanos(timeout))) {
+			return false;
+		}
+		if (waiting_pops.get() > 0) {
+			signal(not_empty);
+		}
+		complete_registered();
+		signal_ready();
+		return true;
+	}
+
+	@Override
+	public T tryPop() {
+		if (registered != 0) {
+			return super.tryPop();
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		Object value = poll();
+		if (value == null) {
+			return null;
+		}
+		if (waiting_pushes.get() > 0) {
+			signal(not_full);
+		}
+		complete_registered();
+		return unwrap(value);
+	}
+
+	@Override
+	public T pop(long timeout, TimeUnit unit) {
+		if (registered != 0) {
+			return super.pop(timeout, unit);
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		Object value = poll();
+		if (value == null && timeout > 0) {
+			value = await_not_empty(true, System.nanoTime() + unit.toNanos(timeout));
+		}
+		if (value == null) {
+			return null;
+		}
+		if (waiting_pushes.get() > 0) {
+			signal(not_full);
+		}
+		complete_registered();
+		return unwrap(value);
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		if (registered != 0) {
+			return super.drainTo(into, max);
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		int n = 0;
+		Object value;
+		while (n < max && (value = poll()) != null) {
+			into.add(unwrap(value));
+			n += 1;
+		}
+		if (n > 0 && waiting_pushes.get() > 0) {
+			signal_all(not_full);
+		}
+		if (n > 0) {
+			complete_registered();
+		}
+		return n;
+	}
+
+	@Override
+	public List<T> popBatch(int max, long timeout, TimeUnit unit) {
+		if (registered != 0) {
+			return super.popBatch(max, timeout, unit);
+		}
+		List<T> batch = new ArrayList<T>();
+		if (max < 1 || drainTo(batch, max) > 0 || timeout <= 0) {
+			return batch;
+		}
+
+		long nanos = unit.toNanos(timeout);
+		Object first = null;
+		wait_lock.lock();
+		waiting_pops.incrementAndGet();
+		try {
+			while ((first = poll()) == null && nanos > 0) {
+				if (isClosed()) {
+					throw new ReceiveError();
+				}
+				nanos = Blocking.awaitNanos(not_empty, nanos);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			waiting_pops.decrementAndGet();
+			wait_lock.unlock();
+		}
+
+		if (first != null) {
+			batch.add(unwrap(first));
+			complete_registered();
+			drain_rest(batch, max - 1);
+		}
+		return batch;
+	}
+
+	private boolean offer(Object value) {
+		while (true) {
+			long tail = counters.get(TAIL);
+			int index = (int) (tail % slots);
+			long delta = sequences.get(index) - tail;
+			if (delta == 0 && slots != max && tail - counters.get(HEAD) >= max) {
+				return false;
+			}
+			if (delta == 0) {
+				if (counters.compareAndSet(TAIL, tail, tail + 1)) {
+					ring.lazySet(index, value);
+					sequences.set(index, tail + 1);
+					return true;
+				}
+			} else if (delta < 0) {
+				return false;
+			}
+		}
+	}
+
+	private Object poll() {
+		while (true) {
+			long head = counters.get(HEAD);
+			int index = (int) (head % slots);
+			long delta = sequences.get(index) - (head + 1);
+			if (delta == 0) {
+				if (counters.compareAndSet(HEAD, head, head + 1)) {
+					Object value = ring.get(index);
+					ring.lazySet(index, null);
+					sequences.set(index, head + slots);
+					return value;
+				}
+			} else if (delta < 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * Parks on not_full until the value is offered, or the deadline passes
+	 * when timed.
+	 */
+	private boolean await_not_full(Object value, boolean timed, long deadline) {
+		wait_lock.lock();
+		waiting_pushes.incrementAndGet();
+		try {
+			while (!offer(value)) {
+				if (isClosed()) {
+					throw new ChannelClosedError();
+				}
+				long wait = BACKSTOP_NANOS;
+				if (timed) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return false;
+					}
+					wait = Math.min(remaining, BACKSTOP_NANOS);
+				}
+				Blocking.awaitNanos(not_full, wait);
+			}
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ChannelClosedError();
+		} finally {
+			waiting_pushes.decrementAndGet();
+			wait_lock.unlock();
+		}
+	}
+
+	/**
+	 * Parks on not_empty until a value is polled, or the deadline passes
+	 * when timed.
+	 *
+	 * @return the value, or null if the deadline passed
+	 */
+	private Object await_not_empty(boolean timed, long deadline) {
+		wait_lock.lock();
+		waiting_pops.incrementAndGet();
+		try {
+			Object value;
+			while ((value = poll()) == null) {
+				if (isClosed()) {
+					throw new ReceiveError();
+				}
+				long wait = BACKSTOP_NANOS;
+				if (timed) {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return null;
+					}
+					wait = Math.min(remaining, BACKSTOP_NANOS);
+				}
+				Blocking.awaitNanos(not_empty, wait);
+			}
+			return value;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReceiveError();
+		} finally {
+			waiting_pops.decrementAndGet();
+			wait_lock.unlock();
+		}
+	}
+
+	/**
+	 * Completes the operations registered while a send or receive was on
+	 * the fast path, which may be waiting for the value or room it made.
+	 */
+	private void complete_registered() {
+		if (registered != 0) {
+			synchronized (mutex) {
+				process();
+			}
+		}
+	}
+
+	private void signal(Condition condition) {
+		wait_lock.lock();
+		try {
+			condition.signal();
+		} finally {
+			wait_lock.unlock();
+		}
+	}
+
+	private void signal_all(Condition condition) {
+		wait_lock.lock();
+		try {
+			condition.signalAll();
+		} finally {
+			wait_lock.unlock();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private T unwrap(Object value) {
+		return value == NULL ? null : (T) value;
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		wait_lock.lock();
+		try {
+			not_full.signalAll();
+			not_empty.signalAll();
+		} finally {
+			wait_lock.unlock();
+		}
+	}
+
+	@Override
+	protected void process() {
+		// published before the ring is looked at, so that a send or receive
+		// on the fast path either sees this operation or left the value or
+		// room it is waiting for
+		registered = operations.size();
+		complete_waiting(poll, offer);
+		registered = operations.size();
+	}
+
+	@Override
+	protected void reset_custom_state() {
+		registered = operations.size();
+	}
+
+	int size() {
+		return (int) (counters.get(TAIL) - counters.get(HEAD));
+	}
+
+	int max() {
+		return max;
+	}
+}
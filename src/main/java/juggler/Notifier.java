@@ -1,20 +1,20 @@
 package juggler;
 
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Tells one waiting goroutine that something happened, passing it a
+ * payload. The waiter parks through {@link WaitStrategy#BLOCKING} and is
+ * unparked when notified, so waiting allocates nothing and a compiled
+ * select can wait on the same notifier over and over.
+ */
 class Notifier<T> {
 
-	private T payload;
-
-	private Lock lock;
-	private Condition cvar;
-	private boolean notified;
+	private volatile T payload;
+	private volatile boolean notified;
+	private volatile Thread waiting;
 
 	public Notifier() {
-		lock = new ReentrantLock();
-		cvar = lock.newCondition();
 		notified = false;
 		payload = null;
 	}
@@ -23,31 +23,67 @@ class Notifier<T> {
 		return notified;
 	}
 
+	/**
+	 * Waits until notified or interrupted. The interrupt status is kept.
+	 */
 	public void await() {
-		lock.lock();
+		await_notified(false, 0L);
+	}
+
+	/**
+	 * Waits up to the given number of nanoseconds to be notified.
+	 *
+	 * @return true if notified
+	 */
+	public boolean await(long nanos) {
+		return await_notified(true, nanos);
+	}
+
+	private boolean await_notified(boolean timed, long nanos) {
+		if (notified) {
+			return true;
+		}
+		long deadline = timed ? System.nanoTime() + nanos : 0L;
+		waiting = Thread.currentThread();
 		try {
-			while (!notified) {
-				cvar.await();
+			for (int attempt = 0; !notified; attempt++) {
+				if (Thread.currentThread().isInterrupted()) {
+					return notified;
+				}
+				long remaining = Long.MAX_VALUE;
+				if (timed) {
+					remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return notified;
+					}
+				}
+				WaitStrategy.BLOCKING.idle(this, attempt, remaining);
 			}
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
+			return true;
 		} finally {
-			lock.unlock();
+			waiting = null;
 		}
 	}
 
 	public Error notify(T payload) {
-		lock.lock();
-		try {
+		synchronized (this) {
 			if (notified) {
 				return new Error("already notified");
 			}
 			this.payload = payload;
 			notified = true;
-			cvar.signal();
-			return null;
-		} finally {
-			lock.unlock();
+		}
+		Thread thread = waiting;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		return null;
+	}
+
+	void reset() {
+		synchronized (this) {
+			notified = false;
+			payload = null;
 		}
 	}
 
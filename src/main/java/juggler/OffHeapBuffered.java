@@ -0,0 +1,354 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import juggler.errors.Rollback;
+
+/**
+ * A buffered queue which keeps values encoded in an off-heap
+ * {@link ByteRing}, so a deep backlog costs no heap objects per value.
+ *
+ * The buffer is sized in bytes: a send blocks until the encoded value and
+ * its length prefix fit. Values are encoded by the sender before taking the
+ * mutex and decoded by the receiver after releasing it. A tryPush checks
+ * for room before encoding, so with a built-in codec a full ring refuses
+ * values without allocating. Waiting uses the mutex's monitor.
+ *
+ * Deferred operations, as a select or an async send registers, wait in the
+ * usual wait lists. Every send and receive completes those it made a value
+ * or room for before releasing the mutex, so they are served ahead of
+ * goroutines waiting on the monitor. Their values are encoded and decoded
+ * under the mutex.
+ */
+final class OffHeapBuffered<T> extends Queue<T> {
+
+	private final Codec<T> codec;
+	private final ByteRing queue;
+
+	private final Push.PushBlock<T> offer = new Push.PushBlock<T>() {
+		@Override
+		public void yield(T obj) {
+			if (!queue.offer(codec.encode(obj))) {
+				throw new Rollback();
+			}
+			signal_ready();
+		}
+	};
+
+	private final Pop.PopBlock<T> poll = new Pop.PopBlock<T>() {
+		@Override
+		public T yield() {
+			if (queue.isEmpty()) {
+				throw new Rollback();
+			}
+			return codec.decode(queue.poll());
+		}
+	};
+
+	public OffHeapBuffered(int capacity, Codec<T> codec) {
+		if (capacity <= ByteRing.HEADER) {
+			throw new InvalidQueueSizeError(String.format(
+					"queue size must be more than %d bytes", ByteRing.HEADER));
+		}
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		this.codec = codec;
+		this.queue = new ByteRing(capacity);
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return true;
+	}
+
+	@Override
+	public boolean isUnbuffered() {
+		return false;
+	}
+
+	@Override
+	public boolean pushable() {
+		synchronized (mutex) {
+			return queue.fits(0);
+		}
+	}
+
+	@Override
+	public boolean poppable() {
+		synchronized (mutex) {
+			return !queue.isEmpty();
+		}
+	}
+
+	@Override
+	public void push(T object) {
+		byte[] payload = encode(object);
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (!queue.offer(payload)) {
+				await(false);
+			}
+			process();
+			mutex.notifyAll();
+		}
+		signal_ready();
+	}
+
+	@Override
+	public T pop() {
+		byte[] payload;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (queue.isEmpty()) {
+				await(true);
+			}
+			payload = queue.poll();
+			process();
+			mutex.notifyAll();
+		}
+		return codec.decode(payload);
+	}
+
+	@Override
+	public boolean tryPush(T object) {
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		int length = fewest_bytes(object);
+		synchronized (mutex) {
+			// behind any registered sends, as with other buffered queues
+			if (!queue.fits(length) || !pushes.isEmpty()) {
+				return false;
+			}
+		}
+		byte[] payload = encode(object);
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (!pushes.isEmpty() || !queue.offer(payload)) {
+				return false;
+			}
+			process();
+			mutex.notifyAll();
+		}
+		signal_ready();
+		return true;
+	}
+
+	@Override
+	public boolean push(T object, long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		byte[] payload = encode(object);
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (!queue.offer(payload)) {
+				if (!await(false, deadline)) {
+					return false;
+				}
+			}
+			process();
+			mutex.notifyAll();
+		}
+		signal_ready();
+		return true;
+	}
+
+	@Override
+	public T tryPop() {
+		return pop(0L, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public T pop(long timeout, TimeUnit unit) {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		byte[] payload;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (queue.isEmpty()) {
+				if (!await(true, deadline)) {
+					return null;
+				}
+			}
+			payload = queue.poll();
+			process();
+			mutex.notifyAll();
+		}
+		return codec.decode(payload);
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		List<byte[]> payloads = new ArrayList<byte[]>();
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (payloads.size() < max && !queue.isEmpty()) {
+				payloads.add(queue.poll());
+			}
+			if (!payloads.isEmpty()) {
+				process();
+				mutex.notifyAll();
+			}
+		}
+		for (byte[] payload : payloads) {
+			into.add(codec.decode(payload));
+		}
+		return payloads.size();
+	}
+
+	@Override
+	public List<T> popBatch(int max, long timeout, TimeUnit unit) {
+		List<T> batch = new ArrayList<T>();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			long remaining = deadline - System.nanoTime();
+			while (queue.isEmpty() && remaining > 0) {
+				try {
+					Blocking.timedWait(mutex, remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+				if (isClosed()) {
+					throw new ReceiveError();
+				}
+				remaining = deadline - System.nanoTime();
+			}
+		}
+		try {
+			drainTo(batch, max);
+		} catch (ChannelClosedError e) {
+			// closed since the wait ended
+			throw new ReceiveError();
+		}
+		return batch;
+	}
+
+	/**
+	 * Refuses a value which could never fit before registering it.
+	 */
+	@Override
+	public Push<T> deferredPush(T object, Notifier<Push<T>> notifier) {
+		encode(object);
+		return super.deferredPush(object, notifier);
+	}
+
+	@Override
+	public void close() {
+		synchronized (mutex) {
+			super.close();
+			mutex.notifyAll();
+		}
+	}
+
+	@Override
+	protected void clear_buffer() {
+		queue.clear();
+	}
+
+	@Override
+	protected void process() {
+		if (complete_waiting(poll, offer)) {
+			mutex.notifyAll();
+		}
+	}
+
+	private byte[] encode(T object) {
+		byte[] payload = codec.encode(object);
+		check_fits(payload.length);
+		return payload;
+	}
+
+	/**
+	 * The fewest bytes the value encodes to if the codec can tell without
+	 * encoding it, or zero.
+	 */
+	private int fewest_bytes(T object) {
+		if (!(codec instanceof Codecs.Sized)) {
+			return 0;
+		}
+		int length = ((Codecs.Sized<T>) codec).length(object);
+		check_fits(length);
+		return length;
+	}
+
+	private void check_fits(int length) {
+		if (ByteRing.HEADER + length > queue.capacity()) {
+			throw new InvalidQueueSizeError(String.format(
+					"a value of %d bytes can never fit in a %d byte queue",
+					length, queue.capacity()));
+		}
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private void await(boolean receiving) {
+		boolean interrupted = false;
+		try {
+			Blocking.wait(mutex);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			interrupted = true;
+		}
+		if (interrupted || isClosed()) {
+			if (receiving) {
+				throw new ReceiveError();
+			}
+			throw new ChannelClosedError();
+		}
+	}
+
+	// Expects to be called while synchronized on the mutex; returns false
+	// once the deadline has passed
+	private boolean await(boolean receiving, long deadline) {
+		long remaining = deadline - System.nanoTime();
+		if (remaining <= 0) {
+			return false;
+		}
+		boolean interrupted = false;
+		try {
+			Blocking.timedWait(mutex, remaining);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			interrupted = true;
+		}
+		if (interrupted || isClosed()) {
+			if (receiving) {
+				throw new ReceiveError();
+			}
+			throw new ChannelClosedError();
+		}
+		return true;
+	}
+
+	int size() {
+		synchronized (mutex) {
+			return queue.size();
+		}
+	}
+
+	int usedBytes() {
+		synchronized (mutex) {
+			return queue.usedBytes();
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package juggler;
+
+import java.util.concurrent.CompletableFuture;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.ReceiveError;
+
+/**
+ * A future completed when a deferred send or receive on a queue completes.
+ *
+ * The future is completed by the notifier of the operation, that is by
+ * whichever goroutine matched it in the queue's process(), while it still
+ * holds the queue's mutex. Dependent stages which do more than hand the
+ * value on should use the async variants. Cancelling withdraws the
+ * operation if it has not completed yet; once it has, cancel() returns
+ * false and the future keeps its result.
+ *
+ * Every queue supports deferred operations, so no goroutine is ever parked
+ * on behalf of a pending future.
+ */
+final class OperationFuture<T, V> extends CompletableFuture<V> {
+
+	private final Queue<T> queue;
+	private volatile Operation<T> operation;
+
+	private OperationFuture(Queue<T> queue) {
+		this.queue = queue;
+	}
+
+	static <T> CompletableFuture<Void> send(Queue<T> queue, T object) {
+		final OperationFuture<T, Void> future = new OperationFuture<T, Void>(queue);
+		try {
+			future.register(queue.deferredPush(object, new Notifier<Push<T>>() {
+				@Override
+				public Error notify(Push<T> push) {
+					Error error = super.notify(push);
+					if (push.sent()) {
+						future.complete(null);
+					} else {
+						future.completeExceptionally(new ChannelClosedError());
+					}
+					return error;
+				}
+			}));
+		} catch (ChannelClosedError e) {
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	static <T> CompletableFuture<T> receive(Queue<T> queue) {
+		final OperationFuture<T, T> future = new OperationFuture<T, T>(queue);
+		try {
+			future.register(queue.deferredPop(new Notifier<Pop<T>>() {
+				@Override
+				public Error notify(Pop<T> pop) {
+					Error error = super.notify(pop);
+					if (pop.received()) {
+						future.complete(pop.getObject());
+					} else {
+						future.completeExceptionally(new ReceiveError());
+					}
+					return error;
+				}
+			}));
+		} catch (ChannelClosedError e) {
+			future.completeExceptionally(new ReceiveError());
+		}
+		return future;
+	}
+
+	private void register(Operation<T> operation) {
+		this.operation = operation;
+	}
+
+	/**
+	 * Withdraws the operation under the queue's mutex before cancelling,
+	 * so an operation which completed first keeps its result: a received
+	 * value is never taken off the channel and then dropped, and a
+	 * delivered send is never reported as cancelled.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		Operation<T> op = operation;
+		if (op != null && !queue.remove_operation(op)) {
+			return isCancelled();
+		}
+		return super.cancel(mayInterruptIfRunning);
+	}
+}
@@ -1,33 +1,24 @@
 package juggler;
 
-
-import java.io.Serializable;
 import java.util.UUID;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import juggler.Once.Performable;
 import juggler.errors.ChannelClosedError;
 import juggler.errors.Rollback;
 
-import org.apache.commons.lang.SerializationUtils;
-
-final class Pop<T extends Serializable> implements Operation<T> {
+final class Pop<T> extends Waiter<T> {
 
-	public interface PopBlock {
-		byte[] yield();
+	public interface PopBlock<T> {
+		T yield();
 	}
 
 	private UUID uuid;
 	private BlockingOnce blocking_once;
-	private Notifier<Pop<T>> notifier;
+	private Notifier<? super Pop<T>> notifier;
 	private T object;
 
-	private Lock mutex;
-	private Condition cvar;
-	private boolean received;
-	private boolean closed;
+	private volatile boolean received;
+	private volatile boolean closed;
 
     public Pop() {
         this(null, null, null);
@@ -37,48 +28,62 @@ final class Pop<T extends Serializable> implements Operation<T> {
         this(null, blocking_once, null);
     }
 
-    public Pop(Notifier<Pop<T>> notifier) {
+    public Pop(Notifier<? super Pop<T>> notifier) {
         this(null, null, notifier);
     }
 
-	public Pop(UUID uuid, BlockingOnce blocking_once, Notifier<Pop<T>> notifier) {
+	public Pop(UUID uuid, BlockingOnce blocking_once, Notifier<? super Pop<T>> notifier) {
 		this.object = null;
-		this.uuid = uuid == null ? UUID.randomUUID() : uuid;
+		this.uuid = uuid;
 		this.blocking_once = blocking_once;
 		this.notifier = notifier;
-		this.mutex = new ReentrantLock();
-		this.cvar = mutex.newCondition();
 		this.received = false;
 		this.closed = false;
 	}
 
+	/**
+	 * Readies a completed or withdrawn pop to be registered again, as a
+	 * compiled select does.
+	 */
+	void reset() {
+		synchronized (this) {
+			this.object = null;
+			this.received = false;
+			this.closed = false;
+		}
+	}
+
 	public boolean received() {
 		return received;
 	}
 
+	@Override
+	boolean isDone() {
+		return received || closed;
+	}
+
 	@Override
 	public boolean isClosed() {
 		return closed;
 	}
 
 	public boolean await() {
-		mutex.lock();
-		try {
-			while (!(received || closed)) {
-				cvar.await();
-			}
-			return received();
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-		} finally {
-			mutex.unlock();
-		}
-		return received();
+		await_done(false, 0L);
+		return received;
+	}
+
+	/**
+	 * Waits up to the given number of nanoseconds for a value.
+	 *
+	 * @return true if a value was received
+	 */
+	public boolean await(long nanos) {
+		await_done(true, nanos);
+		return received;
 	}
 
-	public void send(final PopBlock popBlock) throws Error {
-		mutex.lock();
-		try {
+	public void send(final PopBlock<T> popBlock) throws Error {
+		synchronized (this) {
 			if (closed) {
 				throw new ChannelClosedError();
 			}
@@ -88,9 +93,9 @@ final class Pop<T extends Serializable> implements Operation<T> {
 					blocking_once.perform(new Performable() {
 						@Override
 						public Object perform() {
-                            object = (T) SerializationUtils.deserialize(popBlock.yield());
+                            object = popBlock.yield();
 							received = true;
-							cvar.signal();
+							wake();
 							if (notifier != null) {
 								notifier.notify(Pop.this);
 							}
@@ -103,34 +108,29 @@ final class Pop<T extends Serializable> implements Operation<T> {
 				}
 			} else {
 				try {
-					this.object = (T) SerializationUtils.deserialize(popBlock.yield());
+					this.object = popBlock.yield();
 					this.received = true;
-					this.cvar.signal();
+					wake();
 					if (notifier != null) {
 						notifier.notify(this);
 					}
 				} catch (Rollback e) {
 				}
 			}
-		} finally {
-			mutex.unlock();
 		}
 	}
 
 	@Override
 	public void close() {
-		mutex.lock();
-		try {
+		synchronized (this) {
 			if (received) {
 				return;
 			}
 			closed = true;
-			cvar.signalAll();
+			wake();
 			if (notifier != null) {
 				notifier.notify(this);
 			}
-		} finally {
-			Thread.currentThread().interrupt();
 		}
 	}
 
@@ -141,7 +141,14 @@ final class Pop<T extends Serializable> implements Operation<T> {
 
 	@Override
 	public UUID getUUID() {
-		return uuid;
+		// created on demand, since most operations never need one and
+		// randomUUID goes through SecureRandom
+		synchronized (this) {
+			if (uuid == null) {
+				uuid = UUID.randomUUID();
+			}
+			return uuid;
+		}
 	}
 
 	public T getObject() {
@@ -0,0 +1,184 @@
+package juggler;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+
+/**
+ * Bookkeeping shared by the primitive channels. Subclasses keep the values
+ * in a primitive array of slots() elements and call the begin/end methods
+ * below while synchronized on the channel, so sending and receiving neither
+ * box nor allocate.
+ *
+ * A capacity of zero makes the channel unbuffered: the sender stores the
+ * value in the single slot and then waits until a receiver has taken it.
+ *
+ * Waiters are counted by what they wait for, so a send or receive wakes
+ * nobody when nobody waits, and wakes a single waiter when every waiter is
+ * of the kind it can help. Only when different kinds wait at once are all
+ * woken, since notify() might pick one which cannot go on.
+ */
+abstract class PrimitiveChannel {
+
+	private final int max;
+	private final int slots;
+
+	private long sent;
+	private long received;
+	private boolean closed;
+
+	// senders waiting for a free slot
+	private int waiting_for_room;
+	// receivers waiting for a value
+	private int waiting_for_value;
+	// unbuffered senders waiting for their value to be taken
+	private int waiting_for_receipt;
+
+	protected PrimitiveChannel(int max) {
+		if (max < 0) {
+			throw new InvalidQueueSizeError("queue size must be at least 0");
+		}
+		this.max = max;
+		this.slots = max == 0 ? 1 : max;
+		this.sent = 0;
+		this.received = 0;
+		this.closed = false;
+	}
+
+	protected final int slots() {
+		return slots;
+	}
+
+	/**
+	 * Waits for a free slot and returns its index.
+	 */
+	protected final int begin_send() {
+		if (closed) {
+			throw new ChannelClosedError();
+		}
+		while (sent - received >= slots) {
+			waiting_for_room += 1;
+			try {
+				await(false);
+			} finally {
+				waiting_for_room -= 1;
+			}
+			if (closed) {
+				throw new ChannelClosedError();
+			}
+		}
+		return (int) (sent % slots);
+	}
+
+	/**
+	 * Publishes the value written to the slot, then for an unbuffered
+	 * channel waits for a receiver to take it.
+	 */
+	protected final void end_send() {
+		long sequence = sent;
+		sent += 1;
+		wake(waiting_for_value, waiting_for_room + waiting_for_receipt);
+		if (max == 0) {
+			while (received <= sequence) {
+				if (closed) {
+					throw new ChannelClosedError();
+				}
+				waiting_for_receipt += 1;
+				try {
+					await(false);
+				} finally {
+					waiting_for_receipt -= 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Waits for a value and returns the index of its slot.
+	 */
+	protected final int begin_receive() {
+		if (closed) {
+			throw new ChannelClosedError();
+		}
+		while (sent == received) {
+			waiting_for_value += 1;
+			try {
+				await(true);
+			} finally {
+				waiting_for_value -= 1;
+			}
+			if (closed) {
+				throw new ReceiveError();
+			}
+		}
+		return (int) (received % slots);
+	}
+
+	protected final void end_receive() {
+		received += 1;
+		if (waiting_for_receipt > 0 && waiting_for_room > 0) {
+			// the unbuffered sender of the value and the next sender
+			notifyAll();
+		} else {
+			wake(waiting_for_room + waiting_for_receipt, waiting_for_value);
+		}
+	}
+
+	/**
+	 * Wakes one of the waiters which can act on what just happened, or
+	 * every waiter if others wait as well.
+	 */
+	private void wake(int waiters, int others) {
+		if (waiters == 0) {
+			return;
+		}
+		if (others == 0) {
+			notify();
+		} else {
+			notifyAll();
+		}
+	}
+
+	private void await(boolean receiving) {
+		try {
+			Blocking.wait(this);
+		} catch (InterruptedException e) {
+			// a notification this waiter took goes to the others
+			notifyAll();
+			Thread.currentThread().interrupt();
+			if (receiving) {
+				throw new ReceiveError();
+			}
+			throw new ChannelClosedError();
+		}
+	}
+
+	public synchronized boolean pushable() {
+		return !closed && sent - received < slots
+				&& (max > 0 || sent == received);
+	}
+
+	public synchronized boolean poppable() {
+		return !closed && sent > received;
+	}
+
+	public synchronized void close() {
+		if (closed) {
+			throw new ChannelClosedError();
+		}
+		closed = true;
+		notifyAll();
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	public boolean isOpen() {
+		return !isClosed();
+	}
+
+	public int getMax() {
+		return max;
+	}
+}
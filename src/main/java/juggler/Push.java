@@ -1,33 +1,24 @@
 package juggler;
 
-
-import java.io.Serializable;
 import java.util.UUID;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 
 import juggler.Once.Performable;
 import juggler.errors.ChannelClosedError;
 import juggler.errors.Rollback;
 
-import org.apache.commons.lang.SerializationUtils;
-
-final class Push<T extends Serializable> implements Operation<T> {
+final class Push<T> extends Waiter<T> {
 
-	public interface PushBlock {
-		void yield(byte[] obj);
+	public interface PushBlock<T> {
+		void yield(T obj);
 	}
 
 	private UUID uuid;
 	private BlockingOnce blocking_once;
 	private Notifier<Push<T>> notifier;
-	private byte[] object;
+	private T object;
 
-	private Lock mutex;
-	private Condition cvar;
-	private boolean sent;
-	private boolean closed;
+	private volatile boolean sent;
+	private volatile boolean closed;
 
 	public Push(T obj) {
 		this(obj, null, null, null);
@@ -43,44 +34,62 @@ final class Push<T extends Serializable> implements Operation<T> {
 
 	public Push(T obj, UUID uuid, BlockingOnce blocking_once,
 			Notifier notifier) {
-		this.object = SerializationUtils.serialize(obj);
-		this.uuid = uuid == null ? UUID.randomUUID() : uuid;
+		this.object = obj;
+		this.uuid = uuid;
 		this.blocking_once = blocking_once;
 		this.notifier = notifier;
-		this.mutex = new ReentrantLock();
-		this.cvar = mutex.newCondition();
 		this.sent = false;
 		this.closed = false;
 	}
 
+	/**
+	 * Readies a completed or withdrawn push to be registered again with a
+	 * new object, as a compiled select does.
+	 */
+	void reset(T obj) {
+		synchronized (this) {
+			this.object = obj;
+			this.sent = false;
+			this.closed = false;
+		}
+	}
+
 	public boolean sent() {
 		return sent;
 	}
 
+	@Override
+	boolean isDone() {
+		return sent || closed;
+	}
+
 	@Override
 	public boolean isClosed() {
-		return false;
+		return closed;
 	}
 
 	public void await() {
-		mutex.lock();
-		try {
-			while (!(sent || closed)) {
-				cvar.await();
-			}
-			if (closed) {
-				throw new ChannelClosedError();
-			}
-		} catch (InterruptedException e) {
-			Thread.currentThread().interrupt();
-		} finally {
-			mutex.unlock();
+		await_done(false, 0L);
+		if (closed) {
+			throw new ChannelClosedError();
 		}
 	}
 
-	public void receive(final PushBlock pushBlock) throws Error {
-		mutex.lock();
-		try {
+	/**
+	 * Waits up to the given number of nanoseconds for the value to be taken.
+	 *
+	 * @return true if the value was sent
+	 */
+	public boolean await(long nanos) {
+		await_done(true, nanos);
+		if (closed) {
+			throw new ChannelClosedError();
+		}
+		return sent;
+	}
+
+	public void receive(final PushBlock<T> pushBlock) throws Error {
+		synchronized (this) {
 			if (closed) {
 				throw new ChannelClosedError();
 			}
@@ -92,7 +101,7 @@ final class Push<T extends Serializable> implements Operation<T> {
 						public Object perform() {
 							pushBlock.yield(object);
 							sent = true;
-							cvar.signal();
+							wake();
 							if (notifier != null) {
 								notifier.notify(Push.this);
 							}
@@ -106,32 +115,27 @@ final class Push<T extends Serializable> implements Operation<T> {
 				try {
 					pushBlock.yield(object);
 					sent = true;
-					cvar.signal();
+					wake();
 					if (notifier != null) {
 						notifier.notify(this);
 					}
 				} catch (Rollback e) {
 				}
 			}
-		} finally {
-			mutex.unlock();
 		}
 	}
 
 	@Override
 	public void close() {
-		mutex.lock();
-		try {
+		synchronized (this) {
 			if (sent) {
 				return;
 			}
 			closed = true;
-			cvar.signalAll();
+			wake();
 			if (notifier != null) {
 				notifier.notify(this);
 			}
-		} finally {
-			mutex.unlock();
 		}
 	}
 
@@ -142,7 +146,14 @@ final class Push<T extends Serializable> implements Operation<T> {
 
 	@Override
 	public UUID getUUID() {
-		return uuid;
+		// created on demand, since most operations never need one and
+		// randomUUID goes through SecureRandom
+		synchronized (this) {
+			if (uuid == null) {
+				uuid = UUID.randomUUID();
+			}
+			return uuid;
+		}
 	}
 
 }
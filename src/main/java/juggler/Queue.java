@@ -1,24 +1,52 @@
 package juggler;
 
 
-import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import juggler.errors.ChannelClosedError;
+import juggler.errors.ReceiveError;
 
-abstract class Queue<T extends Serializable> {
+abstract class Queue<T> {
 
-	protected List<String> queue;
-	protected LinkedList<Operation<T>> operations;
-	protected LinkedList<Push<T>> pushes;
-	protected LinkedList<Pop<T>> pops;
+	private static final AtomicLong next_lock_order = new AtomicLong();
+
+	/**
+	 * Operations waiting to complete, in arrival order, and the same
+	 * operations split by kind. Operations are linked intrusively, so any
+	 * of them can be removed in O(1).
+	 */
+	protected WaitList<Waiter<T>> operations;
+	protected WaitList<Push<T>> pushes;
+	protected WaitList<Pop<T>> pops;
 	protected final Object mutex;
 
-	private boolean closed;
+	/**
+	 * Unique per queue. Code holding the mutexes of several queues at once,
+	 * such as a select, acquires them in ascending lock order so two such
+	 * goroutines can never deadlock.
+	 */
+	final long lock_order = next_lock_order.getAndIncrement();
+
+	private volatile boolean closed;
+	private volatile WaitStrategy wait_strategy = WaitStrategy.BLOCKING;
+	private volatile Runnable ready_listener;
+
+	/**
+	 * Values are handed from sender to receiver by reference unless the
+	 * queue was registered with a codec, in which case each value is copied
+	 * through the codec as it is sent.
+	 */
+	private final Codec<T> codec;
 
 	public Queue() {
+		this(null);
+	}
+
+	public Queue(Codec<T> codec) {
 		// if (type == null) {
 		// throw new UntypedError();
 		// }
@@ -27,11 +55,11 @@ abstract class Queue<T extends Serializable> {
 		// }
 
 		this.closed = false;
+		this.codec = codec;
 
-		this.queue = new ArrayList<String>();
-		this.operations = new LinkedList<Operation<T>>();
-		this.pushes = new LinkedList<Push<T>>();
-		this.pops = new LinkedList<Pop<T>>();
+		this.operations = new WaitList<Waiter<T>>(WaitList.OPERATIONS);
+		this.pushes = new WaitList<Push<T>>(WaitList.KIND);
+		this.pops = new WaitList<Pop<T>>(WaitList.KIND);
 
 		this.mutex = new Object();
 
@@ -56,39 +84,114 @@ abstract class Queue<T extends Serializable> {
 				o.close();
 			}
 			operations.clear();
-			queue.clear();
+			clear_buffer();
 			pushes.clear();
 			pops.clear();
 
 			reset_custom_state();
 		}
+		signal_ready();
 	}
 
 	public boolean isClosed() {
 		return closed;
 	}
 
+	public boolean isCopy() {
+		return codec != null;
+	}
+
+	public Codec<T> getCodec() {
+		return codec;
+	}
+
 	public boolean isOpen() {
 		return !closed;
 	}
 
+	/**
+	 * How goroutines wait for operations registered from now on.
+	 */
+	public void setWaitStrategy(WaitStrategy strategy) {
+		if (strategy == null) {
+			throw new NullPointerException("strategy");
+		}
+		this.wait_strategy = strategy;
+	}
+
+	public WaitStrategy getWaitStrategy() {
+		return wait_strategy;
+	}
+
+	/**
+	 * Sets the listener run after anything which may have left a value to
+	 * receive, and after the queue is closed. A ChannelSet uses it to learn
+	 * which of its channels are ready. The listener must be quick and must
+	 * not take the mutex of any queue.
+	 */
+	void setReadyListener(Runnable listener) {
+		synchronized (mutex) {
+			if (listener != null && ready_listener != null) {
+				throw new IllegalStateException(
+						"channel already belongs to a channel set");
+			}
+			ready_listener = listener;
+		}
+	}
+
+	/**
+	 * Subclasses call this, preferably outside the mutex, after every send
+	 * which may have left a value to receive.
+	 */
+	protected final void signal_ready() {
+		Runnable listener = ready_listener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
 	public Push<T> deferredPush(T object) {
-        Push<T> push = new Push<T>(object/* , options */);
-
-        synchronized (mutex) {
-            if (closed) {
-                throw new ChannelClosedError();
-            }
-            operations.add(push);
-            pushes.add(push);
-            process();
-        }
+		return deferredPush(object, null);
+	}
 
-        return push;
+	/**
+	 * Registers a send which tells the notifier once it completes or is
+	 * closed, so the caller need not wait on it.
+	 */
+	public Push<T> deferredPush(T object, Notifier<Push<T>> notifier) {
+		Push<T> push = new Push<T>(outgoing(object), notifier);
+		enqueue(push);
+		return push;
+	}
+
+	/**
+	 * Registers an operation and matches it against those already waiting.
+	 * The operation may be new or, for a compiled select, one reset for
+	 * reuse.
+	 */
+	void enqueue(Waiter<T> operation) {
+		operation.strategy = wait_strategy;
+
+		synchronized (mutex) {
+			if (closed) {
+				throw new ChannelClosedError();
+			}
+			operations.add(operation);
+			if (operation instanceof Push) {
+				pushes.add((Push<T>) operation);
+			} else {
+				pops.add((Pop<T>) operation);
+			}
+			process();
+		}
+		if (operation instanceof Push) {
+			signal_ready();
+		}
 	}
 
 	public void push(T object/*, Map options */) {
-		Push<T> push = new Push<T>(object/* , options */);
+		Push<T> push = new Push<T>(outgoing(object)/* , options */);
+		push.strategy = wait_strategy;
 
 		synchronized (mutex) {
 			if (closed) {
@@ -98,27 +201,28 @@ abstract class Queue<T extends Serializable> {
 			pushes.add(push);
 			process();
 		}
+		signal_ready();
 
 		push.await();
 	}
 
 	public Pop<T> deferredPop() {
-        Pop<T> pop = new Pop<T>(/* options */);
-
-        synchronized (mutex) {
-            if (closed) {
-                throw new ChannelClosedError();
-            }
-            operations.add(pop);
-            pops.add(pop);
-            process();
-        }
+		return deferredPop(null);
+	}
 
+	/**
+	 * Registers a receive which tells the notifier once it completes or is
+	 * closed, so the caller need not wait on it.
+	 */
+	public Pop<T> deferredPop(Notifier<Pop<T>> notifier) {
+		Pop<T> pop = new Pop<T>(notifier);
+		enqueue(pop);
 		return pop;
 	}
 
-	public T pop(/*, Map options */) throws Exception {
+	public T pop(/*, Map options */) {
 		Pop<T> pop = new Pop<T>(/* options */);
+		pop.strategy = wait_strategy;
 
 		synchronized (mutex) {
 			if (closed) {
@@ -131,39 +235,308 @@ abstract class Queue<T extends Serializable> {
 
 		boolean ok = pop.await();
         if (!ok) {
-            throw new Exception();
+            throw new ReceiveError();
         }
 		return pop.getObject();
 	}
 
-	public void remove_operations(Operation<T>... ops) {
+	/**
+	 * Sends the object only if that can be done without waiting. Nothing is
+	 * allocated or registered when it cannot.
+	 *
+	 * @return true if the object was sent
+	 */
+	public boolean tryPush(T object) {
+		synchronized (mutex) {
+			if (closed) {
+				throw new ChannelClosedError();
+			}
+			if (!pushable() || (isBuffered() && !pushes.isEmpty())) {
+				return false;
+			}
+			Push<T> push = new Push<T>(outgoing(object));
+			operations.add(push);
+			pushes.add(push);
+			process();
+			if (!push.sent()) {
+				operations.remove(push);
+				pushes.remove(push);
+				reset_custom_state();
+				return false;
+			}
+		}
+		signal_ready();
+		return true;
+	}
+
+	/**
+	 * Waits up to the timeout for the object to be sent.
+	 *
+	 * @return true if the object was sent, false if the timeout elapsed
+	 */
+	public boolean push(T object, long timeout, TimeUnit unit) {
+		if (tryPush(object)) {
+			return true;
+		}
+		if (timeout <= 0) {
+			return false;
+		}
+		Push<T> push = deferredPush(object);
+		if (!push.await(unit.toNanos(timeout))) {
+			remove_operation(push);
+		}
+		return push.sent();
+	}
+
+	/**
+	 * Receives an object only if one is ready.
+	 *
+	 * @return the object, or null if none was ready
+	 */
+	public T tryPop() {
+		synchronized (mutex) {
+			if (closed) {
+				throw new ChannelClosedError();
+			}
+			if (!poppable()) {
+				return null;
+			}
+			Pop<T> pop = new Pop<T>();
+			operations.add(pop);
+			pops.add(pop);
+			process();
+			if (!pop.received()) {
+				operations.remove(pop);
+				pops.remove(pop);
+				reset_custom_state();
+				return null;
+			}
+			return pop.getObject();
+		}
+	}
+
+	/**
+	 * Waits up to the timeout for an object.
+	 *
+	 * @return the object, or null if the timeout elapsed
+	 */
+	public T pop(long timeout, TimeUnit unit) {
+		if (timeout <= 0) {
+			return tryPop();
+		}
+		Pop<T> pop = deferredPop();
+		if (!pop.await(unit.toNanos(timeout))) {
+			remove_operation(pop);
+			if (pop.isClosed()) {
+				throw new ReceiveError();
+			}
+		}
+		return pop.received() ? pop.getObject() : null;
+	}
+
+	/**
+	 * Sends every object in iteration order, blocking while the queue is
+	 * full. Subclasses move as many objects as fit under one acquisition of
+	 * the mutex.
+	 */
+	public void pushAll(Collection<? extends T> objects) {
+		for (T object : objects) {
+			push(object);
+		}
+	}
+
+	/**
+	 * Receives up to max objects which can be received without blocking
+	 * and adds them to the collection.
+	 *
+	 * @return the number of objects received
+	 */
+	public int drainTo(Collection<? super T> into, int max) {
+		int n = 0;
 		synchronized (mutex) {
 			if (closed) {
-				return;
+				throw new ChannelClosedError();
 			}
+			while (n < max && poppable()) {
+				Pop<T> pop = new Pop<T>();
+				operations.add(pop);
+				pops.add(pop);
+				process();
+				if (!pop.received()) {
+					operations.remove(pop);
+					pops.remove(pop);
+					reset_custom_state();
+					break;
+				}
+				into.add(pop.getObject());
+				n += 1;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Waits up to the timeout for at least one object, then receives up to
+	 * max objects without further blocking. Like pop, it raises
+	 * ChannelClosedError if the queue is already closed and ReceiveError
+	 * if it is closed while waiting; once an object has been received, a
+	 * close only ends the batch.
+	 *
+	 * @return the objects received, empty if the timeout elapsed
+	 */
+	public List<T> popBatch(int max, long timeout, TimeUnit unit) {
+		List<T> batch = new ArrayList<T>();
+		if (max < 1 || drainTo(batch, max) > 0 || timeout <= 0) {
+			return batch;
+		}
 
-			for (Object operation : ops) {
-				operations.remove(operation);  // FIXME: O(n)
+		Pop<T> pop = deferredPop();
+		if (!pop.await(unit.toNanos(timeout))) {
+			remove_operation(pop);
+			if (pop.isClosed()) {
+				throw new ReceiveError();
 			}
+		}
+		if (pop.received()) {
+			batch.add(pop.getObject());
+			drain_rest(batch, max - 1);
+		}
+		return batch;
+	}
 
-			pushes.clear();
-			pops.clear();
+	/**
+	 * Adds what else is ready to a batch which already holds a received
+	 * object. A close in the meantime ends the batch instead of losing it.
+	 */
+	final void drain_rest(List<T> batch, int max) {
+		try {
+			drainTo(batch, max);
+		} catch (ChannelClosedError e) {
+			// the batch is complete
+		}
+	}
 
-			for (Operation<T> operation : operations) {
+	/**
+	 * Withdraws operations which have not completed, such as the losing
+	 * cases of a select. Each is unlinked in O(1); operations which already
+	 * completed or were never registered are ignored.
+	 */
+	public void remove_operations(Operation<T>... ops) {
+		synchronized (mutex) {
+			for (Operation<T> operation : ops) {
+				remove_operation(operation);
+			}
+		}
+	}
+
+	/**
+	 * Withdraws one operation.
+	 *
+	 * @return true if it was still pending, so that it can no longer
+	 *         complete; false if it already completed or was closed
+	 */
+	boolean remove_operation(Operation<T> operation) {
+		synchronized (mutex) {
+			if (closed) {
+				return false;
+			}
+
+			boolean removed = operations.remove(operation);
+			if (removed) {
 				if (operation instanceof Push) {
-					pushes.add((Push<T>) operation);
+					pushes.remove(operation);
 				} else {
-					pops.add((Pop<T>) operation);
+					pops.remove(operation);
 				}
 			}
 
 			reset_custom_state();
+			return removed;
+		}
+	}
+
+	/**
+	 * The value as the receiver will see it: the object itself, or a copy
+	 * taken at send time for queues with a codec.
+	 */
+	protected T outgoing(T object) {
+		if (codec == null || object == null) {
+			return object;
+		}
+		return codec.decode(codec.encode(object));
+	}
+
+	/**
+	 * For queues which keep their own buffer rather than matching pushes
+	 * with pops: completes registered pops from the buffer and registered
+	 * pushes into it, oldest first, for as long as the buffer allows. The
+	 * take and put blocks throw Rollback when the buffer turns out to be
+	 * empty, or full, after all. Expects the mutex to be held.
+	 *
+	 * @return true if any operation left the wait lists
+	 */
+	protected final boolean complete_waiting(Pop.PopBlock<T> take, Push.PushBlock<T> put) {
+		boolean completed = false;
+		boolean progress = true;
+		while (progress) {
+			progress = false;
+			while (!pops.isEmpty() && poppable() && complete(pops.getFirst(), take)) {
+				progress = true;
+			}
+			while (!pushes.isEmpty() && pushable() && complete(pushes.getFirst(), put)) {
+				progress = true;
+			}
+			completed |= progress;
 		}
+		return completed;
+	}
+
+	private boolean complete(Pop<T> pop, Pop.PopBlock<T> take) {
+		try {
+			pop.send(take);
+			if (!pop.received()) {
+				return false;
+			}
+		} catch (Error error) {
+			if (error.isMessage(BlockingOnce.ROLLBACK_MSG)) {
+				return false;
+			}
+			// a select which completed one of its other cases
+			if (!error.isMessage(Once.ERROR_MSG)) {
+				throw error;
+			}
+		}
+		operations.remove(pop);
+		pops.remove(pop);
+		return true;
+	}
+
+	private boolean complete(Push<T> push, Push.PushBlock<T> put) {
+		try {
+			push.receive(put);
+			if (!push.sent()) {
+				return false;
+			}
+		} catch (Error error) {
+			if (error.isMessage(BlockingOnce.ROLLBACK_MSG)) {
+				return false;
+			}
+			if (!error.isMessage(Once.ERROR_MSG)) {
+				throw error;
+			}
+		}
+		operations.remove(push);
+		pushes.remove(push);
+		return true;
 	}
 
 	protected void reset_custom_state() {
 		// implement in subclass...or not...
 	}
 
+	protected void clear_buffer() {
+		// implement in subclass...or not...
+	}
+
 	protected abstract void process();
 }
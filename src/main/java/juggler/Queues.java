@@ -16,6 +16,10 @@ class Queues {
 	}
 
 	public static <T> Queue<T> register(String name, int max) {
+		return register(name, max, null);
+	}
+
+	public static <T> Queue<T> register(String name, int max, Codec<T> codec) {
 		// raise Errors::Untyped unless type
 		// raise Errors::InvalidType unless type.is_a?(Module)
 
@@ -39,11 +43,27 @@ class Queues {
 			}
 
 			if (max > 0) {
-				queues.put(name, new Buffered<T>(max));
+				queue = new Buffered<T>(max, codec);
 			} else {
-				queues.put(name, new Unbuffered<T>());
+				queue = new Unbuffered<T>(codec);
 			}
+			queues.put(name, queue);
+
+			return queue;
+		}
+	}
 
+	/**
+	 * Registers a queue built by the caller, for channel types which are
+	 * not chosen by size alone.
+	 */
+	public static <T> Queue<T> register(String name, Queue<T> queue) {
+		synchronized (LOCK) {
+			if (queues.containsKey(name)) {
+				throw new IllegalArgumentException(String.format(
+						"A queue named %s is already registered", name));
+			}
+			queues.put(name, queue);
 			return queue;
 		}
 	}
@@ -0,0 +1,74 @@
+package juggler;
+
+/**
+ * A fixed-capacity FIFO backed by an array, with O(1) offer and poll. Not
+ * thread-safe; callers synchronize on the owning queue's mutex.
+ */
+final class RingBuffer<T> {
+
+	private final Object[] elements;
+	private int head;
+	private int size;
+
+	public RingBuffer(int capacity) {
+		this.elements = new Object[capacity];
+		this.head = 0;
+		this.size = 0;
+	}
+
+	public boolean offer(T element) {
+		if (size == elements.length) {
+			return false;
+		}
+		int tail = head + size;
+		if (tail >= elements.length) {
+			tail -= elements.length;
+		}
+		elements[tail] = element;
+		size += 1;
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		if (size == 0) {
+			return null;
+		}
+		T element = (T) elements[head];
+		elements[head] = null;
+		head += 1;
+		if (head == elements.length) {
+			head = 0;
+		}
+		size -= 1;
+		return element;
+	}
+
+	public void clear() {
+		for (int i = 0; i < size; i++) {
+			int index = head + i;
+			if (index >= elements.length) {
+				index -= elements.length;
+			}
+			elements[index] = null;
+		}
+		head = 0;
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int capacity() {
+		return elements.length;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public boolean isFull() {
+		return size == elements.length;
+	}
+}
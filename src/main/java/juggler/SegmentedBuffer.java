@@ -0,0 +1,107 @@
+package juggler;
+
+/**
+ * An unbounded FIFO made of linked fixed-size array segments. Memory grows
+ * one segment at a time with the backlog, and a segment emptied by the
+ * consumer is kept as a single spare for the producer to reuse, so a queue
+ * that fills and drains repeatedly stops allocating. Further emptied
+ * segments are left to the garbage collector, so memory shrinks again after
+ * a burst. Not thread-safe; callers synchronize on the owning queue's mutex.
+ */
+final class SegmentedBuffer<T> {
+
+	private static final class Segment {
+		final Object[] elements;
+		Segment next;
+
+		Segment(int size) {
+			elements = new Object[size];
+		}
+	}
+
+	private final int segment_size;
+
+	private Segment head;
+	private Segment tail;
+	private Segment spare;
+	private int head_index;
+	private int tail_index;
+	private int size;
+	private int segments;
+
+	public SegmentedBuffer(int segment_size) {
+		this.segment_size = segment_size;
+		this.head = new Segment(segment_size);
+		this.tail = head;
+		this.segments = 1;
+	}
+
+	public void offer(T element) {
+		if (tail_index == segment_size) {
+			Segment segment = spare;
+			if (segment == null) {
+				segment = new Segment(segment_size);
+			} else {
+				spare = null;
+			}
+			tail.next = segment;
+			tail = segment;
+			tail_index = 0;
+			segments += 1;
+		}
+		tail.elements[tail_index] = element;
+		tail_index += 1;
+		size += 1;
+	}
+
+	@SuppressWarnings("unchecked")
+	public T poll() {
+		if (size == 0) {
+			return null;
+		}
+		T element = (T) head.elements[head_index];
+		head.elements[head_index] = null;
+		head_index += 1;
+		size -= 1;
+		if (size == 0) {
+			// the only live segment is empty again; start over at its front
+			head_index = 0;
+			tail_index = 0;
+		} else if (head_index == segment_size) {
+			Segment used = head;
+			head = used.next;
+			used.next = null;
+			if (spare == null) {
+				spare = used;
+			}
+			head_index = 0;
+			segments -= 1;
+		}
+		return element;
+	}
+
+	public void clear() {
+		head = new Segment(segment_size);
+		tail = head;
+		spare = null;
+		head_index = 0;
+		tail_index = 0;
+		size = 0;
+		segments = 1;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * The number of segments holding the backlog, not counting the spare.
+	 */
+	public int segments() {
+		return segments;
+	}
+}
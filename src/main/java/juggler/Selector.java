@@ -1,18 +1,21 @@
 package juggler;
 
-import java.security.PublicKey;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import juggler.errors.AlreadySelectedError;
 import juggler.errors.BlockMissingError;
 import juggler.errors.ChannelClosedError;
 import juggler.errors.DefaultCaseAlreadyDefinedError;
 import juggler.errors.InvalidDirectionError;
+import juggler.errors.TooManyChannelsError;
 
 
 /**
@@ -32,44 +35,96 @@ public class Selector {
 		if (block == null) {
 			throw new BlockMissingError();
 		}
-		Selector selector = new Selector();
+		Selector selector = new Selector(false);
 		block.yield(selector);
 		selector.select();
 	}
 
+	/**
+	 * Builds a selector whose cases are fixed by the block, to be selected
+	 * any number of times. Each select reuses the selector's operations and
+	 * parks without allocating when it has to wait, so a loop selecting
+	 * over buffered channels allocates nothing, whether or not a case is
+	 * ready when it is scanned.
+	 */
+	public static Selector compile(SelectorBlock block) {
+		if (block == null) {
+			throw new BlockMissingError();
+		}
+		Selector selector = new Selector(true);
+		block.yield(selector);
+		return selector;
+	}
+
+	private static final AtomicLong next_case_id = new AtomicLong();
+
+	/**
+	 * The most channels one select may involve. Its scan holds every queue
+	 * locked, each costing a stack frame; a ChannelSet suits more channels.
+	 */
+	static final int MAX_CHANNELS = 256;
+
 	Map<UUID, Case> cases;
 
 	class Case {
 		public UUID uuid;
-		public Channel channel;
+		public Channel<?> channel;
 		public Direction direction;
 		public Object value;
-		public SelectorBlock[] blk;
+		public Object blk;
+
+		Queue<Object> queue;
+		// created on the first select which has to wait, then reused
+		Waiter<Object> operation;
+		boolean registered;
 
-		Case(UUID uuid, Channel channel, Direction direction, Object value,
-				SelectorBlock[] blk) {
+		Case(UUID uuid, Channel<?> channel, Direction direction, Object value,
+				Object blk) {
 			this.uuid = uuid;
 			this.channel = channel;
 			this.direction = direction;
 			this.value = value;
 			this.blk = blk;
 		}
+
+		/*
+		 * A case's value and block are of its channel's element type, which
+		 * the selector cannot name when it mixes channels; these two casts
+		 * are where that is taken on trust.
+		 */
+
+		@SuppressWarnings("unchecked")
+		Queue<Object> channel_queue() {
+			return (Queue<Object>) channel.getQueue();
+		}
+
+		@SuppressWarnings("unchecked")
+		void receive(Object value) {
+			((ReceiveBlock<Object>) blk).yield(value);
+		}
 	}
 
 	private List<Case> ordered_cases;
-	private Map<Channel, Operation[]> operations;
 	private BlockingOnce blocking_once;
-	private Notifier notifier;
+	private Notifier<Operation<Object>> notifier;
 	private Case default_case;
+	private Case timeout_case;
+	private final boolean reusable;
 	private boolean selected;
 
-	private Selector() {
+	// the queues of the channel cases, in lock order
+	private List<Queue<Object>> queues;
+
+	// the case which was ready when the channels were scanned, if any
+	private Case ready_case;
+	private Object ready_value;
+
+	private Selector(boolean reusable) {
+		this.reusable = reusable;
 		ordered_cases = new ArrayList<Case>();
 		cases = new HashMap<UUID, Selector.Case>();
-		operations = new HashMap<Channel, Operation[]>();
-		blocking_once = new BlockingOnce();
-		notifier = new Notifier<Operation>();
 		default_case = null;
+		timeout_case = null;
 		selected = false;
 	}
 
@@ -80,27 +135,21 @@ public class Selector {
 	public Case defaultCase(ReceiveBlock<Boolean> blk) {
 		if (default_case != null) {
 			throw new DefaultCaseAlreadyDefinedError();
-		} else {
-			default_case = receiveCase(new Channel<Boolean>(1), blk);
 		}
+		default_case = add_case(null, Direction.RECEIVE, Boolean.TRUE, blk);
 		return default_case;
 	}
 
-	public void timeout(final long t, SelectorBlock blk) {
-		final Channel<Boolean> s = new Channel<Boolean>(1);
-		Juggler.go(new Runnable() {
-			@Override
-			public void run() {
-				try {
-					Thread.sleep(t);
-				} catch (InterruptedException e) {
-					Thread.currentThread().interrupt();
-				}
-				s.send(true);
-				s.close();
-			}
-		});
-		add_case(s, Direction.TIMEOUT, null, blk);
+	/**
+	 * Runs the block if no other case is ready within t milliseconds. When
+	 * several timeouts are given the earliest wins.
+	 */
+	public Case timeout(long t, SelectorBlock blk) {
+		Case cse = add_case(null, Direction.TIMEOUT, Long.valueOf(t), blk);
+		if (timeout_case == null || t < (Long) timeout_case.value) {
+			timeout_case = cse;
+		}
+		return cse;
 	}
 
     public interface SendBlock {
@@ -139,78 +188,281 @@ public class Selector {
 //		return add_case(chan, direction, value, blk);
 //	}
 
-	void select() {
-      if (selected) {
-    	  throw new AlreadySelectedError();
-      }
-
-      try {
-	      if (!ordered_cases.isEmpty()) {
-//	        for (Case cse : ordered_cases) {
-//	          if (cse.direction == Direction.SEND) {
-//	            operations.put(cse.channel, cse.channel.send(cse.value/*, :uuid => cse.uuid,
-//	                                                                    :blocking_once => @blocking_once,
-//	                                                                    :notifier => @notifier,
-//	                                                                    :deferred => true*/));
-//	          } else {  // :receive || :timeout
-//	            operations.put(cse.channel, cse.channel.receive(/*:uuid => cse.uuid,
-//	                                                            :blocking_once => @blocking_once,
-//	                                                            :notifier => @notifier,
-//	                                                            :deferred => true*/));
-//	          }
-	        }
-
-	        if (default_case != null) {
-	          default_case.channel.send(true/*, :uuid => @default_case.uuid, :blocking_once => @blocking_once, :notifier => @notifier, :deferred => true*/);
-	        }
-
-	        notifier.await();
-
-//	        execute_case(notifier.getPayload());
-      } finally {
-    	  selected = true;
-    	  close_default_channel();
-    	  dequeue_operations();
-      }
-    }
+	/**
+	 * Evaluates the cases. The queues of every channel involved are locked
+	 * in ascending lock order, then the cases are scanned top to bottom and
+	 * the first one which can proceed at once wins. Only when none can, and
+	 * there is no default case, is an operation registered on every
+	 * channel; all of them share one blocking once, so exactly one of them
+	 * completes and the rest are withdrawn.
+	 *
+	 * A select over more than MAX_CHANNELS distinct channels raises
+	 * TooManyChannelsError rather than give up holding them all locked;
+	 * receive from that many through a ChannelSet instead.
+	 */
+	public void select() {
+		if (selected && !reusable) {
+			throw new AlreadySelectedError();
+		}
+		selected = true;
+		ready_case = null;
+		ready_value = null;
+		long start = timeout_case == null ? 0L : System.nanoTime();
 
-	protected void dequeue_operations() {
-		for (Entry<Channel, Operation[]> entry : operations.entrySet()) {
-			entry.getKey().remove_operations(entry.getValue());
+		if (ordered_cases.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (queues == null) {
+				queues = lock_order();
+			}
+			locked_scan(queues, 0);
+
+			if (ready_case != null) {
+				execute_case(ready_case, ready_value);
+				return;
+			}
+			if (default_case != null) {
+				execute_case(default_case, default_case.value);
+				return;
+			}
+
+			if (timeout_case != null) {
+				long t = TimeUnit.MILLISECONDS.toNanos((Long) timeout_case.value);
+				if (!notifier.await(start + t - System.nanoTime()) && claim()) {
+					dequeue_operations();
+					execute_case(timeout_case, null);
+					return;
+				}
+			}
+			notifier.await();
+
+			Operation<Object> operation = notifier.getPayload();
+			if (operation == null || operation.isClosed()) {
+				// closed or interrupted: report it unless a case won anyway
+				if (claim()) {
+					if (operation == null) {
+						return;
+					}
+					throw new ChannelClosedError();
+				}
+				operation = completed_operation();
+			}
+			dequeue_operations();
+			execute_case(operation);
+		} finally {
+			dequeue_operations();
 		}
 	}
 
-	protected void close_default_channel() {
-		if (default_case != null) {
-			default_case.channel.close();
+	/**
+	 * @return the distinct queues of all channel cases, in lock order
+	 */
+	private List<Queue<Object>> lock_order() {
+		List<Queue<Object>> queues = new ArrayList<Queue<Object>>(ordered_cases.size());
+		for (Case cse : ordered_cases) {
+			if (cse.channel != null) {
+				cse.queue = cse.channel_queue();
+				queues.add(cse.queue);
+			}
+		}
+
+		Collections.sort(queues, new Comparator<Queue<Object>>() {
+			@Override
+			public int compare(Queue<Object> a, Queue<Object> b) {
+				return Long.compare(a.lock_order, b.lock_order);
+			}
+		});
+
+		int n = 0;
+		for (int i = 0; i < queues.size(); i++) {
+			if (n == 0 || queues.get(i) != queues.get(n - 1)) {
+				queues.set(n++, queues.get(i));
+			}
+		}
+		if (n > MAX_CHANNELS) {
+			throw new TooManyChannelsError(String.format(
+					"a select may involve at most %d channels, not %d; use a ChannelSet",
+					MAX_CHANNELS, n));
+		}
+		return new ArrayList<Queue<Object>>(queues.subList(0, n));
+	}
+
+	private void locked_scan(List<Queue<Object>> queues, int i) {
+		if (i < queues.size()) {
+			synchronized (queues.get(i).mutex) {
+				locked_scan(queues, i + 1);
+			}
+			return;
+		}
+
+		if (!scan() && default_case == null && !immediate_timeout()) {
+			// only a select which has to wait needs these. Every operation
+			// of an earlier select was withdrawn under its queue's mutex,
+			// so no queue can still be completing one and they can be reset.
+			if (blocking_once == null) {
+				blocking_once = new BlockingOnce();
+				notifier = new Notifier<Operation<Object>>();
+			} else {
+				blocking_once.reset();
+				notifier.reset();
+			}
+			enqueue_operations();
+		}
+	}
+
+	/**
+	 * Completes the first case, top to bottom, which needs no waiting.
+	 * Runs with every queue locked, so no case can become ready between
+	 * the scan and the registration of the operations.
+	 *
+	 * @return true if a case was completed
+	 */
+	private boolean scan() {
+		for (int i = 0; i < ordered_cases.size(); i++) {
+			Case cse = ordered_cases.get(i);
+			if (cse.queue == null) {
+				continue;
+			}
+			if (cse.direction == Direction.SEND) {
+				if (cse.queue.tryPush(cse.value)) {
+					ready_case = cse;
+					return true;
+				}
+			} else {
+				// a null received is indistinguishable from an empty queue
+				Object value = cse.queue.tryPop();
+				if (value != null) {
+					ready_case = cse;
+					ready_value = value;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private boolean immediate_timeout() {
+		if (timeout_case != null && (Long) timeout_case.value <= 0) {
+			ready_case = timeout_case;
+			return true;
+		}
+		return false;
+	}
+
+	private void enqueue_operations() {
+		for (int i = 0; i < ordered_cases.size(); i++) {
+			Case cse = ordered_cases.get(i);
+			if (cse.queue == null) {
+				continue;
+			}
+			if (cse.direction == Direction.SEND) {
+				Object value = cse.queue.outgoing(cse.value);
+				if (cse.operation == null) {
+					cse.operation = new Push<Object>(value, cse.uuid,
+							blocking_once, notifier);
+				} else {
+					((Push<Object>) cse.operation).reset(value);
+				}
+			} else {
+				if (cse.operation == null) {
+					cse.operation = new Pop<Object>(cse.uuid, blocking_once,
+							notifier);
+				} else {
+					((Pop<Object>) cse.operation).reset();
+				}
+			}
+			cse.queue.enqueue(cse.operation);
+			cse.registered = true;
+		}
+	}
+
+	/**
+	 * Takes the blocking once for the selector itself, so that no case can
+	 * complete afterwards.
+	 *
+	 * @return false if a case already completed
+	 */
+	private static final Once.Performable<Object> NOTHING = new Once.Performable<Object>() {
+		@Override
+		public Object perform() {
+			return null;
+		}
+	};
+
+	private boolean claim() {
+		try {
+			blocking_once.perform(NOTHING);
+			return true;
+		} catch (Error e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the operation which completed after the notifier had already
+	 * been told of a closed one
+	 */
+	private Operation<Object> completed_operation() {
+		for (int i = 0; i < ordered_cases.size(); i++) {
+			Case cse = ordered_cases.get(i);
+			if (cse.registered && !cse.operation.isClosed()
+					&& cse.operation.isDone()) {
+				return cse.operation;
+			}
+		}
+		throw new ChannelClosedError();
+	}
+
+	protected void dequeue_operations() {
+		for (int i = 0; i < ordered_cases.size(); i++) {
+			Case cse = ordered_cases.get(i);
+			if (cse.registered) {
+				cse.queue.remove_operation(cse.operation);
+				cse.registered = false;
+			}
 		}
 	}
 
-	protected Case add_case(Channel chan, Direction direction,
-			Object value/* =nil */, SelectorBlock[] blk) {
-		UUID uuid = UUID.randomUUID();
+	protected Case add_case(Channel<?> chan, Direction direction,
+			Object value/* =nil */, Object blk) {
+		if (chan != null) {
+			chan.check_direction(direction);
+		}
+		// a case id need only be unique; randomUUID would go through
+		// SecureRandom for every case
+		UUID uuid = new UUID(0L, next_case_id.getAndIncrement());
 		Case cse = new Case(uuid, chan, direction, value, blk);
 		ordered_cases.add(cse);
 		cases.put(uuid, cse);
-		operations.put(chan, new Operation[0]);
+		queues = null;
 		return cse;
 	}
 
-	protected void execute_case(Operation operation) {
+	protected void execute_case(Operation<Object> operation) {
 		if (operation.isClosed()) {
 			throw new ChannelClosedError();
 		}
 
 		Case cse = cases.get(operation.getUUID());
-		// blk, direction = cse.blk, cse.direction
-
-		if (cse.blk != null) {
-//			if (cse.direction == Direction.SEND
-//					|| cse.direction == Direction.TIMEOUT) {
-//				cse.blk.call();
-//			} else { // RECEIVE
-//				cse.blk.call(operation.getObject());
-//			}
+		Object value = null;
+		if (operation instanceof Pop) {
+			value = ((Pop<Object>) operation).getObject();
+		}
+		execute_case(cse, value);
+	}
+
+	protected void execute_case(Case cse, Object value) {
+		if (cse.blk == null) {
+			return;
+		}
+		if (cse.direction == Direction.SEND) {
+			((SendBlock) cse.blk).yield();
+		} else if (cse.direction == Direction.TIMEOUT) {
+			((SelectorBlock) cse.blk).yield(this);
+		} else { // RECEIVE
+			cse.receive(value);
 		}
 	}
 
@@ -0,0 +1,165 @@
+package juggler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A FIFO of byte records kept in a temporary file. Records are appended and
+ * read back sequentially through fixed size buffers, so memory use does not
+ * depend on how much has been spilled. The file is truncated whenever it
+ * empties and deleted by {@link #delete()}.
+ *
+ * Not thread safe; callers hold the queue's mutex.
+ */
+final class SpillFile {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+	private final FileChannel channel;
+	private final ByteBuffer write_buffer;
+	private final ByteBuffer read_buffer;
+	private final byte[] header;
+
+	// file offset just past the last byte written out of the write buffer
+	private long end;
+	// file offset of the next byte to load into the read buffer
+	private long next;
+
+	private long records;
+	private long bytes;
+
+	SpillFile(File directory) {
+		try {
+			this.file = File.createTempFile("juggler-spill", ".tmp", directory);
+			this.file.deleteOnExit();
+			this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.write_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.read_buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		this.read_buffer.limit(0);
+		this.header = new byte[4];
+	}
+
+	void append(byte[] payload) {
+		if (write_buffer.remaining() < 4 + payload.length) {
+			flush();
+		}
+		if (write_buffer.remaining() < 4 + payload.length) {
+			// larger than the buffer; write it straight out
+			ByteBuffer record = ByteBuffer.allocate(4 + payload.length);
+			record.putInt(payload.length).put(payload).flip();
+			write(record);
+		} else {
+			write_buffer.putInt(payload.length).put(payload);
+		}
+		records += 1;
+		bytes += 4 + payload.length;
+	}
+
+	byte[] take() {
+		read_fully(header);
+		int length = ((header[0] & 0xff) << 24) | ((header[1] & 0xff) << 16)
+				| ((header[2] & 0xff) << 8) | (header[3] & 0xff);
+		byte[] payload = new byte[length];
+		read_fully(payload);
+		records -= 1;
+		bytes -= 4 + length;
+		if (records == 0) {
+			reset();
+		}
+		return payload;
+	}
+
+	boolean isEmpty() {
+		return records == 0;
+	}
+
+	long records() {
+		return records;
+	}
+
+	long bytes() {
+		return bytes;
+	}
+
+	File file() {
+		return file;
+	}
+
+	void delete() {
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			file.delete();
+		}
+	}
+
+	private void read_fully(byte[] into) {
+		int offset = 0;
+		while (offset < into.length) {
+			if (!read_buffer.hasRemaining()) {
+				fill();
+			}
+			int n = Math.min(read_buffer.remaining(), into.length - offset);
+			read_buffer.get(into, offset, n);
+			offset += n;
+		}
+	}
+
+	private void fill() {
+		if (next >= end) {
+			flush();
+		}
+		read_buffer.clear();
+		try {
+			int n = channel.read(read_buffer, next);
+			if (n <= 0) {
+				throw new IOException("spill file " + file + " ends early");
+			}
+			next += n;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		read_buffer.flip();
+	}
+
+	private void flush() {
+		write_buffer.flip();
+		write(write_buffer);
+		write_buffer.clear();
+	}
+
+	private void write(ByteBuffer source) {
+		try {
+			while (source.hasRemaining()) {
+				end += channel.write(source, end);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	// Everything written has been read, so start again at the front
+	private void reset() {
+		try {
+			channel.truncate(0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		end = 0;
+		next = 0;
+		write_buffer.clear();
+		read_buffer.clear();
+		read_buffer.limit(0);
+	}
+}
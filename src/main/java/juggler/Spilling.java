@@ -0,0 +1,272 @@
+package juggler;
+
+import java.io.File;
+import java.util.Collection;
+
+import juggler.Pop.PopBlock;
+import juggler.Push.PushBlock;
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+
+/**
+ * A bounded queue whose sends never block. Up to max values wait in memory
+ * as in {@link Buffered}; once that is full, further values are encoded with
+ * the codec and appended to a {@link SpillFile}. Each value received from
+ * memory is replaced by the oldest spilled one, and while anything is
+ * spilled new values are spilled too, so values are received in the order
+ * they were sent.
+ *
+ * Values which stayed in memory are passed by reference; values which were
+ * spilled are received as decoded copies. The spill file is created on the
+ * first spill and deleted when the queue is closed.
+ */
+public class Spilling<T> extends Queue<T> {
+
+	protected final RingBuffer<T> queue;
+	private final Codec<T> spill_codec;
+	private final File directory;
+	private SpillFile spill;
+
+	private long spilled;
+	private long peak_backlog;
+
+	public Spilling(int max, Codec<T> codec) {
+		this(max, codec, new File(System.getProperty("java.io.tmpdir")));
+	}
+
+	/**
+	 * @param directory
+	 *            where the spill file is created
+	 */
+	public Spilling(int max, Codec<T> codec, File directory) {
+		if (max < 1) {
+			throw new InvalidQueueSizeError("queue size must be at least 1");
+		}
+		if (codec == null) {
+			throw new NullPointerException("codec");
+		}
+		this.queue = new RingBuffer<T>(max);
+		this.spill_codec = codec;
+		this.directory = directory;
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return true;
+	}
+
+	@Override
+	public boolean isUnbuffered() {
+		return false;
+	}
+
+	@Override
+	public boolean pushable() {
+		return true;
+	}
+
+	@Override
+	public boolean poppable() {
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * Sends never wait, so no operation is created unless receives are
+	 * queued ahead of the value.
+	 */
+	@Override
+	public void push(T object) {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			offer(object);
+			process();
+		}
+		signal_ready();
+	}
+
+	/**
+	 * Completes under the mutex without creating an operation when a value
+	 * is ready; only a receive which has to block registers a Pop.
+	 */
+	@Override
+	public T pop() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (pops.isEmpty() && poppable()) {
+				return poll();
+			}
+		}
+		return super.pop();
+	}
+
+	@Override
+	public boolean tryPush(T object) {
+		push(object);
+		return true;
+	}
+
+	@Override
+	public T tryPop() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (!pops.isEmpty() || !poppable()) {
+				return null;
+			}
+			return poll();
+		}
+	}
+
+	@Override
+	public void pushAll(Collection<? extends T> objects) {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			for (T object : objects) {
+				offer(object);
+			}
+			process();
+		}
+		signal_ready();
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		int n = 0;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (n < max && poppable()) {
+				into.add(poll());
+				n += 1;
+			}
+		}
+		return n;
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private void offer(T object) {
+		if ((spill == null || spill.isEmpty()) && !queue.isFull()) {
+			queue.offer(object);
+			return;
+		}
+		if (spill == null) {
+			spill = new SpillFile(directory);
+		}
+		spill.append(spill_codec.encode(object));
+		spilled += 1;
+		peak_backlog = Math.max(peak_backlog, spill.records());
+	}
+
+	// Expects to be called while synchronized on the mutex
+	private T poll() {
+		T object = queue.poll();
+		if (spill != null && !spill.isEmpty()) {
+			queue.offer(spill_codec.decode(spill.take()));
+		}
+		return object;
+	}
+
+	@Override
+	protected void clear_buffer() {
+		queue.clear();
+		if (spill != null) {
+			spill.delete();
+			spill = null;
+		}
+	}
+
+	@Override
+	protected void process() {
+		while (!pushes.isEmpty()) {
+			Push<T> push = pushes.removeFirst();
+			operations.remove(push);
+			try {
+				push.receive(new PushBlock<T>() {
+					@Override
+					public void yield(T obj) {
+						offer(obj);
+					}
+				});
+			} catch (Error error) {
+				// a select which completed one of its other cases
+				if (!error.isMessage(Once.ERROR_MSG)) {
+					throw error;
+				}
+			}
+		}
+
+		while (!pops.isEmpty() && poppable()) {
+			Pop<T> pop = pops.removeFirst();
+			operations.remove(pop);
+			try {
+				pop.send(new PopBlock<T>() {
+					@Override
+					public T yield() {
+						return poll();
+					}
+				});
+			} catch (Error error) {
+				if (!error.isMessage(Once.ERROR_MSG)) {
+					throw error;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of values ever written to the spill file
+	 */
+	public long getSpilledCount() {
+		synchronized (mutex) {
+			return spilled;
+		}
+	}
+
+	/**
+	 * @return the number of values waiting in the spill file
+	 */
+	public long getSpillBacklog() {
+		synchronized (mutex) {
+			return spill == null ? 0 : spill.records();
+		}
+	}
+
+	/**
+	 * @return the most values that have waited in the spill file at once
+	 */
+	public long getPeakSpillBacklog() {
+		synchronized (mutex) {
+			return peak_backlog;
+		}
+	}
+
+	/**
+	 * @return the encoded size, in bytes, of the values waiting in the spill
+	 *         file
+	 */
+	public long getSpillBytes() {
+		synchronized (mutex) {
+			return spill == null ? 0 : spill.bytes();
+		}
+	}
+
+	int size() {
+		synchronized (mutex) {
+			return queue.size();
+		}
+	}
+
+	File spillFile() {
+		synchronized (mutex) {
+			return spill == null ? null : spill.file();
+		}
+	}
+}
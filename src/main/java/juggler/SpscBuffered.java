@@ -0,0 +1,421 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import juggler.errors.Rollback;
+
+/**
+ * A buffered queue for exactly one sending and one receiving goroutine.
+ *
+ * Sends and receives never take the queue's mutex. The producer owns the
+ * tail index and the consumer owns the head index; each publishes its index
+ * with an ordered write and keeps a cached copy of the other's, so the
+ * shared indices are only re-read when the ring looks full or empty. The
+ * two indices sit 128 bytes apart to keep them on separate cache lines,
+ * and each side's own index and cache live in a padded holder of their
+ * own, so neither side writes to a line the other reads on every
+ * operation.
+ *
+ * A side with nothing to do spins briefly, then parks until the other side
+ * makes progress.
+ *
+ * Deferred operations, as a select or an async send registers, wait in the
+ * usual wait lists. While any are registered, sends and receives go through
+ * the mutex and the wait lists as well, so the ring never has more than one
+ * goroutine acting as producer or consumer at a time and values keep their
+ * order. A send or receive which took the fast path just as an operation
+ * was registered completes it afterwards; the indices are published with
+ * volatile writes so that it cannot miss the registration.
+ */
+final class SpscBuffered<T> extends Queue<T> {
+
+	private static final int SPINS = 100;
+	private static final long PARK_NANOS = 100000L;
+
+	/** Slot offsets into indices, 16 longs (128 bytes) apart. */
+	private static final int HEAD = 15;
+	private static final int TAIL = 31;
+
+	/** Padding ahead of a side's fields. */
+	private static class SidePadding {
+		long p00, p01, p02, p03, p04, p05, p06, p07;
+		long p10, p11, p12, p13, p14, p15, p16, p17;
+	}
+
+	/**
+	 * The fields only one side writes; superclass fields are laid out
+	 * first, so the padding cannot be reordered after them.
+	 */
+	private static class SideFields extends SidePadding {
+		// the side's own index, published through indices
+		long local;
+		// the other side's index as last read from indices
+		long cache;
+	}
+
+	private static final class Side extends SideFields {
+		long q00, q01, q02, q03, q04, q05, q06, q07;
+		long q10, q11, q12, q13, q14, q15, q16, q17;
+	}
+
+	private final int max;
+	private final int mask;
+	private final AtomicReferenceArray<T> ring;
+	private final AtomicLongArray indices;
+
+	// The producer's tail and cached head
+	private final Side producer = new Side();
+
+	// The consumer's head and cached tail
+	private final Side consumer = new Side();
+
+	private volatile Thread waiting_producer;
+	private volatile Thread waiting_consumer;
+
+	// the number of operations in the wait lists
+	private volatile int registered;
+
+	private final Push.PushBlock<T> offer = new Push.PushBlock<T>() {
+		@Override
+		public void yield(T obj) {
+			if (indices.get(TAIL) - indices.get(HEAD) >= max) {
+				throw new Rollback();
+			}
+			put(obj);
+		}
+	};
+
+	private final Pop.PopBlock<T> poll = new Pop.PopBlock<T>() {
+		@Override
+		public T yield() {
+			if (consumer.local >= indices.get(TAIL)) {
+				throw new Rollback();
+			}
+			return take();
+		}
+	};
+
+	public SpscBuffered(int max) {
+		if (max < 1) {
+			throw new InvalidQueueSizeError("queue size must be at least 1");
+		}
+		this.max = max;
+		int capacity = Integer.highestOneBit(max);
+		if (capacity < max) {
+			capacity <<= 1;
+		}
+		this.mask = capacity - 1;
+		this.ring = new AtomicReferenceArray<T>(capacity);
+		this.indices = new AtomicLongArray(TAIL + 17);
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return true;
+	}
+
+	@Override
+	public boolean isUnbuffered() {
+		return false;
+	}
+
+	@Override
+	public boolean pushable() {
+		return indices.get(TAIL) - indices.get(HEAD) < max;
+	}
+
+	@Override
+	public boolean poppable() {
+		return indices.get(TAIL) > indices.get(HEAD);
+	}
+
+	@Override
+	public void push(T object) {
+		if (registered != 0) {
+			super.push(object);
+			return;
+		}
+		await_room(false, 0L);
+		put(outgoing(object));
+		complete_registered();
+	}
+
+	@Override
+	public boolean tryPush(T object) {
+		if (registered != 0) {
+			return super.tryPush(object);
+		}
+		return push(object, 0L, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public boolean push(T object, long timeout, TimeUnit unit) {
+		if (registered != 0) {
+			return super.push(object, timeout, unit);
+		}
+		if (!await_room(true, System.nanoTime() + unit.toNanos(timeout))) {
+			return false;
+		}
+		put(outgoing(object));
+		complete_registered();
+		return true;
+	}
+
+	@Override
+	public T pop() {
+		if (registered != 0) {
+			return super.pop();
+		}
+		await_value(false, 0L);
+		T value = take();
+		complete_registered();
+		return value;
+	}
+
+	@Override
+	public T tryPop() {
+		if (registered != 0) {
+			return super.tryPop();
+		}
+		return pop(0L, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	public T pop(long timeout, TimeUnit unit) {
+		if (registered != 0) {
+			return super.pop(timeout, unit);
+		}
+		if (!await_value(true, System.nanoTime() + unit.toNanos(timeout))) {
+			return null;
+		}
+		T value = take();
+		complete_registered();
+		return value;
+	}
+
+	/**
+	 * Spins, then parks, until the ring has room for another value.
+	 *
+	 * @return false if the deadline passed first
+	 */
+	private boolean await_room(boolean timed, long deadline) {
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		long tail = producer.local;
+		int spins = 0;
+		while (tail - producer.cache >= max) {
+			producer.cache = indices.get(HEAD);
+			if (tail - producer.cache < max) {
+				break;
+			}
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			long park = PARK_NANOS;
+			if (timed) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				park = Math.min(remaining, PARK_NANOS);
+			}
+			if (spins < SPINS) {
+				spins += 1;
+			} else {
+				waiting_producer = Thread.currentThread();
+				if (tail - indices.get(HEAD) >= max && isOpen()) {
+					Blocking.park(this, park);
+				}
+				waiting_producer = null;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Spins, then parks, until the producer has published a value.
+	 *
+	 * @return false if the deadline passed first
+	 */
+	private boolean await_value(boolean timed, long deadline) {
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		long head = consumer.local;
+		int spins = 0;
+		while (head >= consumer.cache) {
+			consumer.cache = indices.get(TAIL);
+			if (head < consumer.cache) {
+				break;
+			}
+			if (isClosed()) {
+				throw new ReceiveError();
+			}
+			long park = PARK_NANOS;
+			if (timed) {
+				long remaining = deadline - System.nanoTime();
+				if (remaining <= 0) {
+					return false;
+				}
+				park = Math.min(remaining, PARK_NANOS);
+			}
+			if (spins < SPINS) {
+				spins += 1;
+			} else {
+				waiting_consumer = Thread.currentThread();
+				if (head >= indices.get(TAIL) && isOpen()) {
+					Blocking.park(this, park);
+				}
+				waiting_consumer = null;
+			}
+		}
+		return true;
+	}
+
+	// Expects await_room to have returned true
+	private void put(T value) {
+		long tail = producer.local;
+		ring.lazySet((int) tail & mask, value);
+		producer.local = tail + 1;
+		indices.set(TAIL, tail + 1);
+
+		Thread thread = waiting_consumer;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		signal_ready();
+	}
+
+	// Expects await_value to have returned true
+	private T take() {
+		long head = consumer.local;
+		int index = (int) head & mask;
+		T value = ring.get(index);
+		ring.lazySet(index, null);
+		consumer.local = head + 1;
+		indices.set(HEAD, head + 1);
+
+		Thread thread = waiting_producer;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		return value;
+	}
+
+	/**
+	 * Completes the operations registered while a send or receive was on
+	 * the fast path, which may be waiting for the value or room it made.
+	 */
+	private void complete_registered() {
+		if (registered != 0) {
+			synchronized (mutex) {
+				process();
+			}
+		}
+	}
+
+	/**
+	 * Takes every value published so far, up to max, and publishes the new
+	 * head once for the whole batch.
+	 */
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		if (registered != 0) {
+			return super.drainTo(into, max);
+		}
+		if (isClosed()) {
+			throw new ChannelClosedError();
+		}
+		long head = consumer.local;
+		consumer.cache = indices.get(TAIL);
+		int n = 0;
+		while (n < max && head < consumer.cache) {
+			int index = (int) head & mask;
+			into.add(ring.get(index));
+			ring.lazySet(index, null);
+			head += 1;
+			n += 1;
+		}
+		if (n > 0) {
+			consumer.local = head;
+			indices.set(HEAD, head);
+
+			Thread thread = waiting_producer;
+			if (thread != null) {
+				LockSupport.unpark(thread);
+			}
+			complete_registered();
+		}
+		return n;
+	}
+
+	@Override
+	public List<T> popBatch(int max, long timeout, TimeUnit unit) {
+		if (registered != 0) {
+			return super.popBatch(max, timeout, unit);
+		}
+		List<T> batch = new ArrayList<T>();
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while (max > 0 && drainTo(batch, max) == 0) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				break;
+			}
+			waiting_consumer = Thread.currentThread();
+			if (!poppable() && isOpen()) {
+				Blocking.park(this, Math.min(remaining, PARK_NANOS));
+			}
+			waiting_consumer = null;
+			if (isClosed()) {
+				throw new ReceiveError();
+			}
+		}
+		return batch;
+	}
+
+	@Override
+	public void close() {
+		super.close();
+		Thread producer_thread = waiting_producer;
+		if (producer_thread != null) {
+			LockSupport.unpark(producer_thread);
+		}
+		Thread consumer_thread = waiting_consumer;
+		if (consumer_thread != null) {
+			LockSupport.unpark(consumer_thread);
+		}
+	}
+
+	@Override
+	protected void process() {
+		// published before the ring is looked at, so that a send or receive
+		// on the fast path either sees this operation or left the value or
+		// room it is waiting for
+		registered = operations.size();
+		complete_waiting(poll, offer);
+		registered = operations.size();
+	}
+
+	@Override
+	protected void reset_custom_state() {
+		registered = operations.size();
+	}
+
+	int size() {
+		return (int) (indices.get(TAIL) - indices.get(HEAD));
+	}
+
+	int max() {
+		return max;
+	}
+}
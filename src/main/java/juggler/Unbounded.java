@@ -0,0 +1,227 @@
+package juggler;
+
+import java.util.Collection;
+import java.util.logging.Logger;
+
+import juggler.Pop.PopBlock;
+import juggler.Push.PushBlock;
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+
+/**
+ * A queue whose sends never block. Values wait in a {@link SegmentedBuffer}
+ * which grows and shrinks with the backlog.
+ *
+ * When the backlog first rises above the soft limit a warning is logged; it
+ * is logged again only after the backlog has dropped back to the limit.
+ */
+public class Unbounded<T> extends Queue<T> {
+
+	private static final Logger LOGGER = Logger.getLogger(Unbounded.class.getName());
+
+	static final int SEGMENT_SIZE = 1024;
+
+	protected final SegmentedBuffer<T> queue;
+	private final int soft_limit;
+	private boolean over_soft_limit;
+
+	/**
+	 * @param soft_limit
+	 *            the backlog above which a warning is logged, or 0 for none
+	 */
+	public Unbounded(int soft_limit) {
+		this(soft_limit, null);
+	}
+
+	public Unbounded(int soft_limit, Codec<T> codec) {
+		super(codec);
+		if (soft_limit < 0) {
+			throw new InvalidQueueSizeError("soft limit must be at least 0");
+		}
+		this.soft_limit = soft_limit;
+		this.queue = new SegmentedBuffer<T>(SEGMENT_SIZE);
+	}
+
+	@Override
+	public boolean isBuffered() {
+		return true;
+	}
+
+	@Override
+	public boolean isUnbuffered() {
+		return false;
+	}
+
+	@Override
+	public boolean pushable() {
+		return true;
+	}
+
+	@Override
+	public boolean poppable() {
+		return !queue.isEmpty();
+	}
+
+	/**
+	 * Sends never wait, so no operation is created unless receives are
+	 * queued ahead of the value.
+	 */
+	@Override
+	public void push(T object) {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			queue.offer(outgoing(object));
+			process();
+		}
+		signal_ready();
+	}
+
+	/**
+	 * Completes under the mutex without creating an operation when a value
+	 * is ready; only a receive which has to block registers a Pop.
+	 */
+	@Override
+	public T pop() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (pops.isEmpty() && poppable()) {
+				T object = queue.poll();
+				check_soft_limit();
+				return object;
+			}
+		}
+		return super.pop();
+	}
+
+	@Override
+	public boolean tryPush(T object) {
+		push(object);
+		return true;
+	}
+
+	@Override
+	public T tryPop() {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			if (!pops.isEmpty() || !poppable()) {
+				return null;
+			}
+			T object = queue.poll();
+			check_soft_limit();
+			return object;
+		}
+	}
+
+	@Override
+	public void pushAll(Collection<? extends T> objects) {
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			for (T object : objects) {
+				queue.offer(outgoing(object));
+			}
+			process();
+		}
+		signal_ready();
+	}
+
+	@Override
+	public int drainTo(Collection<? super T> into, int max) {
+		int n = 0;
+		synchronized (mutex) {
+			if (isClosed()) {
+				throw new ChannelClosedError();
+			}
+			while (n < max && poppable()) {
+				into.add(queue.poll());
+				n += 1;
+			}
+			check_soft_limit();
+		}
+		return n;
+	}
+
+	@Override
+	protected void clear_buffer() {
+		queue.clear();
+	}
+
+	@Override
+	protected void process() {
+		while (!pushes.isEmpty()) {
+			Push<T> push = pushes.removeFirst();
+			operations.remove(push);
+			try {
+				push.receive(new PushBlock<T>() {
+					@Override
+					public void yield(T obj) {
+						queue.offer(obj);
+					}
+				});
+			} catch (Error error) {
+				// a select which completed one of its other cases
+				if (!error.isMessage(Once.ERROR_MSG)) {
+					throw error;
+				}
+			}
+		}
+
+		while (!pops.isEmpty() && poppable()) {
+			Pop<T> pop = pops.removeFirst();
+			operations.remove(pop);
+			try {
+				pop.send(new PopBlock<T>() {
+					@Override
+					public T yield() {
+						return queue.poll();
+					}
+				});
+			} catch (Error error) {
+				if (!error.isMessage(Once.ERROR_MSG)) {
+					throw error;
+				}
+			}
+		}
+
+		check_soft_limit();
+	}
+
+	private void check_soft_limit() {
+		if (soft_limit == 0) {
+			return;
+		}
+		if (queue.size() > soft_limit) {
+			if (!over_soft_limit) {
+				over_soft_limit = true;
+				LOGGER.warning(String.format(
+						"unbounded channel backlog of %d exceeds soft limit of %d",
+						queue.size(), soft_limit));
+			}
+		} else {
+			over_soft_limit = false;
+		}
+	}
+
+	int size() {
+		return queue.size();
+	}
+
+	int segments() {
+		return queue.segments();
+	}
+
+	int softLimit() {
+		return soft_limit;
+	}
+
+	boolean isOverSoftLimit() {
+		return over_soft_limit;
+	}
+}
@@ -4,13 +4,19 @@ import juggler.Pop.PopBlock;
 import juggler.Push.PushBlock;
 import juggler.errors.Rollback;
 
-import java.io.Serializable;
-
-public class Unbuffered<T extends Serializable> extends Queue<T> {
+public class Unbuffered<T> extends Queue<T> {
 
 	private int waiting_pushes;
 	private int waiting_pops;
 
+	public Unbuffered() {
+		this(null);
+	}
+
+	public Unbuffered(Codec<T> codec) {
+		super(codec);
+	}
+
 	@Override
 	public boolean isBuffered() {
 		return false;
@@ -39,12 +45,12 @@ public class Unbuffered<T extends Serializable> extends Queue<T> {
 
 	@Override
 	protected void process() {
-		Operation operation = operations.getLast();
+		Operation<T> operation = operations.getLast();
 
 		if (operation instanceof Push) {
 			waiting_pushes += 1;
 
-			for (final Pop pop_operation : pops/* .clone() */) {
+			for (final Pop<T> pop_operation : pops/* .clone() */) {
 				if (operation.getBlockingOnce() != null
 						&& operation.getBlockingOnce().equals(
 								pop_operation.getBlockingOnce())) {
@@ -53,13 +59,13 @@ public class Unbuffered<T extends Serializable> extends Queue<T> {
 
 				Error error = null;
 				try {
-					((Push) operation).receive(new PushBlock() {
+					((Push<T>) operation).receive(new PushBlock<T>() {
 						@Override
-						public void yield(final byte[] value) {
+						public void yield(final T value) {
 							try {
-								pop_operation.send(new PopBlock() {
+								pop_operation.send(new PopBlock<T>() {
 									@Override
-									public byte[] yield() {
+									public T yield() {
 										return value;
 									}
 								});
@@ -76,17 +82,22 @@ public class Unbuffered<T extends Serializable> extends Queue<T> {
 					error = err;
 				}
 
+				if (error == null && !((Push<T>) operation).sent()) {
+					// rolled back: the pop belonged to a select which
+					// already completed another case
+					continue;
+				}
 				if (error == null || error.isMessage(Once.ERROR_MSG)) {
 					waiting_pushes -= 1;
-					operations.pop();
-					pushes.pop();
+					operations.remove(operation);
+					pushes.remove(operation);
 					break;
 				}
 			}
 		} else { // Pop
 			waiting_pops += 1;
 
-			for (final Push push_operation : pushes/* .clone() */) {
+			for (final Push<T> push_operation : pushes/* .clone() */) {
 				if (operation.getBlockingOnce() != null
 						&& operation.getBlockingOnce().equals(
 								push_operation.getBlockingOnce())) {
@@ -95,15 +106,16 @@ public class Unbuffered<T extends Serializable> extends Queue<T> {
 
 				Error error = null;
 				try {
-					((Pop) operation).send(new PopBlock() {
+					((Pop<T>) operation).send(new PopBlock<T>() {
 						@Override
-						public byte[] yield() {
-							final byte[][] value = new byte[1][];
+						@SuppressWarnings("unchecked")
+						public T yield() {
+							final Object[] value = new Object[1];
 
 							try {
-								push_operation.receive(new PushBlock() {
+								push_operation.receive(new PushBlock<T>() {
 									@Override
-									public void yield(byte[] v) {
+									public void yield(T v) {
 										value[0] = v;
 									}
 								});
@@ -114,17 +126,20 @@ public class Unbuffered<T extends Serializable> extends Queue<T> {
 							waiting_pushes -= 1;
 							operations.remove(push_operation);
 							pushes.remove(push_operation);
-							return value[0];
+							return (T) value[0];
 						}
 					});
 				} catch (Error err) {
 					error = err;
 				}
 
+				if (error == null && !((Pop<T>) operation).received()) {
+					continue;
+				}
 				if (error == null || error.isMessage(Once.ERROR_MSG)) {
 					waiting_pops -= 1;
-					operations.pop();
-					pops.pop();
+					operations.remove(operation);
+					pops.remove(operation);
 					break;
 				}
 			}
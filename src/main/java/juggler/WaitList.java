@@ -0,0 +1,197 @@
+package juggler;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A FIFO of operations linked through their own {@link Waiter} fields, so
+ * adding, removing any member and removing the head are all O(1) and
+ * allocate nothing. Removing an operation which is not in the list is a
+ * no-op.
+ *
+ * A queue keeps one list of all its operations and one each of pushes and
+ * pops; an operation can be in one list of each slot at a time. Not thread
+ * safe; callers hold the queue's mutex.
+ */
+final class WaitList<E extends Waiter<?>> implements Iterable<E> {
+
+	static final int OPERATIONS = 0;
+	static final int KIND = 1;
+
+	private final int slot;
+	private Waiter<?> head;
+	private Waiter<?> tail;
+	private int size;
+
+	WaitList(int slot) {
+		this.slot = slot;
+	}
+
+	public void add(E waiter) {
+		if (owner(waiter) != null) {
+			throw new IllegalStateException("operation is already waiting");
+		}
+		set_owner(waiter, this);
+		set_prev(waiter, tail);
+		set_next(waiter, null);
+		if (tail == null) {
+			head = waiter;
+		} else {
+			set_next(tail, waiter);
+		}
+		tail = waiter;
+		size += 1;
+	}
+
+	/**
+	 * @return true if the operation was in this list
+	 */
+	public boolean remove(Operation<?> operation) {
+		if (!(operation instanceof Waiter)) {
+			return false;
+		}
+		Waiter<?> waiter = (Waiter<?>) operation;
+		if (owner(waiter) != this) {
+			return false;
+		}
+		Waiter<?> prev = prev(waiter);
+		Waiter<?> next = next(waiter);
+		if (prev == null) {
+			head = next;
+		} else {
+			set_next(prev, next);
+		}
+		if (next == null) {
+			tail = prev;
+		} else {
+			set_prev(next, prev);
+		}
+		unlink(waiter);
+		size -= 1;
+		return true;
+	}
+
+	public boolean contains(Operation<?> operation) {
+		return operation instanceof Waiter && owner((Waiter<?>) operation) == this;
+	}
+
+	public E getFirst() {
+		if (head == null) {
+			throw new NoSuchElementException();
+		}
+		return cast(head);
+	}
+
+	public E getLast() {
+		if (tail == null) {
+			throw new NoSuchElementException();
+		}
+		return cast(tail);
+	}
+
+	public E removeFirst() {
+		E first = getFirst();
+		remove(first);
+		return first;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public void clear() {
+		Waiter<?> waiter = head;
+		while (waiter != null) {
+			Waiter<?> next = next(waiter);
+			unlink(waiter);
+			waiter = next;
+		}
+		head = null;
+		tail = null;
+		size = 0;
+	}
+
+	/**
+	 * The iterator reads ahead, so the operation it last returned may be
+	 * removed while iterating.
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		return new Iterator<E>() {
+			private Waiter<?> next = head;
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public E next() {
+				if (next == null) {
+					throw new NoSuchElementException();
+				}
+				Waiter<?> current = next;
+				next = WaitList.this.next(current);
+				return cast(current);
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@SuppressWarnings("unchecked")
+	private E cast(Waiter<?> waiter) {
+		return (E) waiter;
+	}
+
+	private void unlink(Waiter<?> waiter) {
+		set_prev(waiter, null);
+		set_next(waiter, null);
+		set_owner(waiter, null);
+	}
+
+	private WaitList<?> owner(Waiter<?> waiter) {
+		return slot == OPERATIONS ? waiter.operations : waiter.kind;
+	}
+
+	private void set_owner(Waiter<?> waiter, WaitList<?> owner) {
+		if (slot == OPERATIONS) {
+			waiter.operations = owner;
+		} else {
+			waiter.kind = owner;
+		}
+	}
+
+	private Waiter<?> prev(Waiter<?> waiter) {
+		return slot == OPERATIONS ? waiter.prev_operation : waiter.prev_kind;
+	}
+
+	private Waiter<?> next(Waiter<?> waiter) {
+		return slot == OPERATIONS ? waiter.next_operation : waiter.next_kind;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void set_prev(Waiter waiter, Waiter prev) {
+		if (slot == OPERATIONS) {
+			waiter.prev_operation = prev;
+		} else {
+			waiter.prev_kind = prev;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void set_next(Waiter waiter, Waiter next) {
+		if (slot == OPERATIONS) {
+			waiter.next_operation = next;
+		} else {
+			waiter.next_kind = next;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package juggler;
+
+/**
+ * How a goroutine waits for its send or receive to be matched. Strategies
+ * which spin hand values off sooner but keep a core busy while waiting.
+ *
+ * A channel's strategy applies to the operations it registers; SPSC and
+ * MPMC channels always spin briefly, then park.
+ */
+public enum WaitStrategy {
+
+	/**
+	 * Spins until matched, never giving up the core. For pipelines with a
+	 * core to spare per waiting goroutine.
+	 */
+	BUSY_SPIN {
+		@Override
+		void idle(Object blocker, int attempt, long remaining) {
+			Thread.onSpinWait();
+		}
+	},
+
+	/**
+	 * Spins briefly, then yields the core between checks.
+	 */
+	YIELD {
+		@Override
+		void idle(Object blocker, int attempt, long remaining) {
+			if (attempt < SPINS) {
+				Thread.onSpinWait();
+			} else {
+				Thread.yield();
+			}
+		}
+	},
+
+	/**
+	 * Spins, then yields, then parks until woken.
+	 */
+	ADAPTIVE {
+		@Override
+		void idle(Object blocker, int attempt, long remaining) {
+			if (attempt < SPINS) {
+				Thread.onSpinWait();
+			} else if (attempt < SPINS + YIELDS) {
+				Thread.yield();
+			} else {
+				park(blocker, remaining);
+			}
+		}
+	},
+
+	/**
+	 * Parks straight away until woken. The default.
+	 */
+	BLOCKING {
+		@Override
+		void idle(Object blocker, int attempt, long remaining) {
+			park(blocker, remaining);
+		}
+	};
+
+	static final int SPINS = 1000;
+	static final int YIELDS = 100;
+
+	/**
+	 * Waits a little before the waiter checks again.
+	 *
+	 * @param attempt
+	 *            how many times it has waited already
+	 * @param remaining
+	 *            nanoseconds left, or Long.MAX_VALUE for no limit
+	 */
+	abstract void idle(Object blocker, int attempt, long remaining);
+
+	private static void park(Object blocker, long remaining) {
+		Blocking.park(blocker, remaining);
+	}
+}
@@ -0,0 +1,77 @@
+package juggler;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The links an operation needs to sit in its queue's {@link WaitList}s: one
+ * pair for the list of all operations and one for the list of its own kind,
+ * pushes or pops. Keeping them in the operation itself lets a queue unlink
+ * a cancelled operation in O(1).
+ *
+ * The links are only read or written while holding the queue's mutex.
+ *
+ * A goroutine waiting for the operation to complete idles according to
+ * the operation's {@link WaitStrategy}; whoever completes or closes the
+ * operation unparks it.
+ */
+abstract class Waiter<T> implements Operation<T> {
+
+	Waiter<T> prev_operation;
+	Waiter<T> next_operation;
+	WaitList<?> operations;
+
+	Waiter<T> prev_kind;
+	Waiter<T> next_kind;
+	WaitList<?> kind;
+
+	WaitStrategy strategy = WaitStrategy.BLOCKING;
+	private volatile Thread waiting;
+
+	/**
+	 * @return true once the operation has completed or been closed
+	 */
+	abstract boolean isDone();
+
+	/**
+	 * Waits until the operation is done, the timeout elapses when timed, or
+	 * the goroutine is interrupted. The interrupt status is kept.
+	 *
+	 * @return isDone()
+	 */
+	final boolean await_done(boolean timed, long nanos) {
+		if (isDone()) {
+			return true;
+		}
+		long deadline = timed ? System.nanoTime() + nanos : 0L;
+		waiting = Thread.currentThread();
+		try {
+			for (int attempt = 0; !isDone(); attempt++) {
+				if (Thread.currentThread().isInterrupted()) {
+					return isDone();
+				}
+				long remaining = Long.MAX_VALUE;
+				if (timed) {
+					remaining = deadline - System.nanoTime();
+					if (remaining <= 0) {
+						return isDone();
+					}
+				}
+				strategy.idle(this, attempt, remaining);
+			}
+			return true;
+		} finally {
+			waiting = null;
+		}
+	}
+
+	/**
+	 * Unparks the waiting goroutine, if any. Call after isDone() has become
+	 * true.
+	 */
+	final void wake() {
+		Thread thread = waiting;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+	}
+}
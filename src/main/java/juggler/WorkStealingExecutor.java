@@ -0,0 +1,115 @@
+package juggler;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A {@link GoExecutor} for CPU-bound goroutine graphs built on a
+ * work-stealing ForkJoinPool in LIFO mode.
+ *
+ * A goroutine launched from inside another goroutine is pushed onto the
+ * launching worker's own deque and, being last in, is the next one that
+ * worker runs, while its data is still hot in cache. Idle workers steal the
+ * oldest tasks from the other end of busy workers' deques. Goroutines
+ * launched from outside the pool enter through the shared submission queue.
+ *
+ * A goroutine which blocks on a channel tells the pool first, and the pool
+ * may start a spare worker to run other goroutines meanwhile, so a
+ * pipeline with more stages than workers keeps moving. Each blocked
+ * goroutine still holds a thread, so this mode suits CPU-bound graphs
+ * better than servers with many long-lived, mostly idle goroutines.
+ *
+ * A goroutine which throws is reported to its worker's uncaught exception
+ * handler, however it was launched.
+ */
+public class WorkStealingExecutor implements GoExecutor {
+
+	/**
+	 * A forked task keeps its exception for a join which never comes, so
+	 * each goroutine reports its own failure.
+	 */
+	private static final class Goroutine extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final Runnable runnable;
+
+		Goroutine(Runnable runnable) {
+			this.runnable = runnable;
+		}
+
+		@Override
+		protected void compute() {
+			try {
+				runnable.run();
+			} catch (Throwable e) {
+				Thread thread = Thread.currentThread();
+				thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+			}
+		}
+	}
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * One worker per available processor.
+	 */
+	public WorkStealingExecutor() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public WorkStealingExecutor(int parallelism) {
+		this.pool = new ForkJoinPool(parallelism,
+				ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, false);
+	}
+
+	@Override
+	public Thread go(Runnable runnable) {
+		Goroutine goroutine = new Goroutine(runnable);
+		Thread current = Thread.currentThread();
+		if (current instanceof ForkJoinWorkerThread
+				&& ((ForkJoinWorkerThread) current).getPool() == pool) {
+			goroutine.fork();
+		} else {
+			pool.execute(goroutine);
+		}
+		return null;
+	}
+
+	@Override
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	public int getParallelism() {
+		return pool.getParallelism();
+	}
+
+	/**
+	 * An estimate of the number of tasks taken from one worker's deque by
+	 * another since the pool was created.
+	 */
+	public long getStealCount() {
+		return pool.getStealCount();
+	}
+
+	/**
+	 * An estimate of the goroutines queued in the workers' own deques.
+	 */
+	public long getQueuedTaskCount() {
+		return pool.getQueuedTaskCount();
+	}
+
+	/**
+	 * An estimate of the goroutines launched from outside the pool and not
+	 * yet picked up by a worker.
+	 */
+	public int getQueuedSubmissionCount() {
+		return pool.getQueuedSubmissionCount();
+	}
+
+	public int getActiveThreadCount() {
+		return pool.getActiveThreadCount();
+	}
+}
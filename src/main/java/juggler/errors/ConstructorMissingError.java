@@ -0,0 +1,11 @@
+package juggler.errors;
+
+public class ConstructorMissingError extends Error {
+
+	private static final long serialVersionUID = 5316284170594382713L;
+
+	public ConstructorMissingError(String msg) {
+		super(msg);
+	}
+
+}
@@ -0,0 +1,11 @@
+package juggler.errors;
+
+public class TooManyChannelsError extends Error {
+
+	private static final long serialVersionUID = 6016275370145926671L;
+
+	public TooManyChannelsError(String msg) {
+		super(msg);
+	}
+
+}
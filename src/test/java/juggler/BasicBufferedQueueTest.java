@@ -45,4 +45,19 @@ public class BasicBufferedQueueTest extends BufferedQueueTest {
             previous = o;
         }
     }
+
+    /**
+     * It should fill and drain a large buffer in order.
+     */
+    public void testLargeBuffer() {
+        Buffered<Integer> large = new Buffered<Integer>(10000);
+        for (int i = 0; i < 10000; i++) {
+            large.push(i);
+        }
+        assertFalse(large.pushable());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, large.pop().intValue());
+        }
+        assertFalse(large.poppable());
+    }
 }
@@ -0,0 +1,74 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.lang.management.ManagementFactory;
+
+import junit.framework.TestCase;
+
+public class BufferedFastPathTest extends TestCase {
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static long allocatedBy(Queue<Integer> queue, int n) {
+        Integer value = 7;
+        long before = allocated();
+        for (int i = 0; i < n; i++) {
+            queue.push(value);
+            queue.push(value);
+            queue.pop();
+            queue.pop();
+            queue.tryPush(value);
+            queue.tryPop();
+        }
+        return allocated() - before;
+    }
+
+    /**
+     * A send and receive which need not wait should allocate nothing.
+     */
+    public void testNoAllocation() {
+        Buffered<Integer> queue = new Buffered<Integer>(4);
+        allocatedBy(queue, 100000);
+        assertTrue(allocatedBy(queue, 100000) < 100000);
+        assertTrue(queue.operations.isEmpty());
+    }
+
+    public void testUnboundedNoAllocation() {
+        Unbounded<Integer> queue = new Unbounded<Integer>(0);
+        allocatedBy(queue, 100000);
+        assertTrue(allocatedBy(queue, 100000) < 100000);
+    }
+
+    /**
+     * Blocked senders and receivers should still be served in order.
+     */
+    public void testSlowPath() throws InterruptedException {
+        final Channel<Integer> c = new Channel<Integer>(1);
+        final int n = 10000;
+        Thread t = go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    c.send(i);
+                }
+            }
+        });
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, c.receive().intValue());
+        }
+        if (t != null) {
+            t.join();
+        }
+        assertTrue(c.getQueue().operations.isEmpty());
+    }
+
+    public void testUuidOnDemand() {
+        Push<Integer> push = new Push<Integer>(1);
+        assertNotNull(push.getUUID());
+        assertEquals(push.getUUID(), push.getUUID());
+    }
+}
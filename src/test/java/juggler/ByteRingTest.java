@@ -0,0 +1,55 @@
+package juggler;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class ByteRingTest extends TestCase {
+
+    ByteRing ring;
+
+    protected void setUp() throws Exception {
+        ring = new ByteRing(20);
+    }
+
+    private byte[] bytes(int length, int seed) {
+        byte[] b = new byte[length];
+        for (int i = 0; i < length; i++) {
+            b[i] = (byte) (seed + i);
+        }
+        return b;
+    }
+
+    public void testEmpty() {
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        assertTrue(ring.fits(16));
+        assertFalse(ring.fits(17));
+    }
+
+    public void testLengthPrefix() {
+        assertTrue(ring.offer(bytes(6, 0)));
+        assertEquals(10, ring.usedBytes());
+        assertTrue(ring.offer(new byte[0]));
+        assertEquals(14, ring.usedBytes());
+        assertFalse(ring.offer(bytes(3, 0)));
+        assertEquals(2, ring.size());
+    }
+
+    /**
+     * It should split records, headers included, across the end of the
+     * arena.
+     */
+    public void testWraparound() {
+        for (int i = 0; i < 50; i++) {
+            byte[] a = bytes(1 + i % 7, i);
+            byte[] b = bytes(1 + (i + 3) % 5, -i);
+            assertTrue(ring.offer(a));
+            assertTrue(ring.offer(b));
+            assertTrue(Arrays.equals(a, ring.poll()));
+            assertTrue(Arrays.equals(b, ring.poll()));
+        }
+        assertTrue(ring.isEmpty());
+        assertEquals(0, ring.usedBytes());
+    }
+}
@@ -0,0 +1,136 @@
+package juggler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.ReceiveError;
+import junit.framework.TestCase;
+
+public class ChannelAsyncTest extends TestCase {
+
+    public void testReceiveCompletesOnSend() throws Exception {
+        Channel<Integer> c = new Channel<Integer>();
+        CompletableFuture<Integer> received = c.receiveAsync();
+        assertFalse(received.isDone());
+        assertEquals(1, c.getQueue().pops.size());
+        CompletableFuture<Void> sent = c.sendAsync(5);
+        assertTrue(sent.isDone());
+        assertEquals(5, received.get(0, TimeUnit.SECONDS).intValue());
+    }
+
+    public void testBufferedSend() throws Exception {
+        Channel<Integer> c = new Channel<Integer>(1);
+        assertTrue(c.sendAsync(1).isDone());
+        CompletableFuture<Void> second = c.sendAsync(2);
+        assertFalse(second.isDone());
+        assertEquals(1, c.receive().intValue());
+        second.get(5, TimeUnit.SECONDS);
+        assertEquals(2, c.receiveAsync().get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    /**
+     * Pending futures should fail when the channel is closed.
+     */
+    public void testClose() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>();
+        CompletableFuture<Integer> received = c.receiveAsync();
+        Channel<Integer> d = new Channel<Integer>();
+        CompletableFuture<Void> sent = d.sendAsync(1);
+        c.close();
+        d.close();
+        try {
+            received.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ReceiveError);
+        }
+        try {
+            sent.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof ChannelClosedError);
+        }
+    }
+
+    /**
+     * Cancelling should withdraw the operation so it takes no value.
+     */
+    public void testCancel() {
+        Channel<Integer> c = new Channel<Integer>(1);
+        CompletableFuture<Integer> received = c.receiveAsync();
+        assertTrue(received.cancel(false));
+        assertTrue(c.getQueue().operations.isEmpty());
+        c.send(3);
+        assertEquals(3, c.receive().intValue());
+    }
+
+    /**
+     * A cancel racing the send which completes the receive should either
+     * withdraw the receive, leaving the value in the channel, or fail and
+     * leave the value in the future; never lose it.
+     */
+    public void testCancelRace() throws Exception {
+        final Channel<Integer> c = new Channel<Integer>(1);
+        for (int i = 0; i < 2000; i++) {
+            final int value = i;
+            CompletableFuture<Integer> received = c.receiveAsync();
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    c.send(value);
+                }
+            });
+            sender.start();
+            boolean cancelled = received.cancel(false);
+            sender.join();
+            if (cancelled) {
+                assertTrue(received.isCancelled());
+                assertEquals(value, c.receive().intValue());
+            } else {
+                assertEquals(value, received.get(0, TimeUnit.SECONDS).intValue());
+                assertNull(c.tryReceive());
+            }
+        }
+    }
+
+    public void testChained() throws Exception {
+        Channel<Integer> c = new Channel<Integer>();
+        CompletableFuture<Integer> doubled = c.receiveAsync().thenApplyAsync(
+                new Function<Integer, Integer>() {
+                    @Override
+                    public Integer apply(Integer value) {
+                        return value * 2;
+                    }
+                });
+        c.sendAsync(21);
+        assertEquals(42, doubled.get(5, TimeUnit.SECONDS).intValue());
+    }
+
+    /**
+     * It should register on lock-free channels too, in order and without a
+     * goroutine per operation, and withdraw cancelled operations.
+     */
+    public void testLockFreeChannels() throws Exception {
+        Channel<Integer> c = Channel.spsc(2);
+        CompletableFuture<Integer> received = c.receiveAsync();
+        c.sendAsync(9).get(5, TimeUnit.SECONDS);
+        assertEquals(9, received.get(5, TimeUnit.SECONDS).intValue());
+
+        c.send(1);
+        c.send(2);
+        CompletableFuture<Void> third = c.sendAsync(3);
+        CompletableFuture<Void> fourth = c.sendAsync(4);
+        CompletableFuture<Void> cancelled = c.sendAsync(5);
+        assertFalse(third.isDone());
+        assertTrue(cancelled.cancel(false));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, c.receive().intValue());
+        }
+        assertTrue(third.isDone() && fourth.isDone());
+        assertNull(c.getQueue().tryPop());
+        c.close();
+    }
+}
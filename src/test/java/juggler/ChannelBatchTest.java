@@ -0,0 +1,146 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.ReceiveError;
+import junit.framework.TestCase;
+
+public class ChannelBatchTest extends TestCase {
+
+    private List<Integer> range(int from, int to) {
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = from; i < to; i++) {
+            values.add(i);
+        }
+        return values;
+    }
+
+    private void assertBatches(final Channel<Integer> c) {
+        final int n = 1000;
+        go(new Runnable() {
+            @Override
+            public void run() {
+                c.sendAll(range(0, n));
+            }
+        });
+
+        List<Integer> received = new ArrayList<Integer>();
+        while (received.size() < n) {
+            received.addAll(c.receiveBatch(64, 1000));
+        }
+        assertEquals(range(0, n), received);
+        c.close();
+    }
+
+    public void testBuffered() {
+        assertBatches(new Channel<Integer>(16));
+    }
+
+    public void testUnbuffered() {
+        assertBatches(new Channel<Integer>());
+    }
+
+    public void testSpsc() {
+        assertBatches(Channel.<Integer>spsc(16));
+    }
+
+    public void testMpmc() {
+        assertBatches(Channel.<Integer>mpmc(16));
+    }
+
+    /**
+     * It should receive at most max values without blocking.
+     */
+    public void testDrainTo() {
+        Channel<Integer> c = new Channel<Integer>(10);
+        c.sendAll(range(0, 5));
+
+        List<Integer> into = new ArrayList<Integer>();
+        assertEquals(3, c.drainTo(into, 3));
+        assertEquals(range(0, 3), into);
+        assertEquals(2, c.drainTo(into, 10));
+        assertEquals(0, c.drainTo(into, 10));
+        assertEquals(range(0, 5), into);
+        c.close();
+    }
+
+    /**
+     * It should let waiting senders refill the buffer while draining.
+     */
+    public void testDrainToAdmitsWaitingSenders() throws InterruptedException {
+        final Channel<Integer> c = new Channel<Integer>(2);
+        c.sendAll(range(0, 2));
+        Thread th = go(new Runnable() {
+            @Override
+            public void run() {
+                c.send(2);
+            }
+        });
+        Thread.sleep(50);
+
+        List<Integer> into = new ArrayList<Integer>();
+        assertEquals(3, c.drainTo(into, 10));
+        assertEquals(range(0, 3), into);
+        th.join();
+        c.close();
+    }
+
+    /**
+     * It should return an empty batch once the timeout elapses.
+     */
+    public void testReceiveBatchTimeout() {
+        Channel<Integer> c = new Channel<Integer>(4);
+        long start = System.currentTimeMillis();
+        assertTrue(c.receiveBatch(10, 50).isEmpty());
+        assertTrue(System.currentTimeMillis() - start >= 50);
+
+        c.send(1);
+        assertEquals(range(1, 2), c.receiveBatch(10, 50));
+        c.close();
+    }
+
+    /**
+     * A batch receive should report a close the way a single receive does.
+     */
+    public void testClosed() throws InterruptedException {
+        List<Channel<Integer>> channels = new ArrayList<Channel<Integer>>();
+        channels.add(new Channel<Integer>());
+        channels.add(new Channel<Integer>(4));
+        channels.add(Channel.<Integer>spsc(4));
+        channels.add(Channel.<Integer>mpmc(4));
+        channels.add(Channel.offHeap(64, Codecs.INTEGER));
+        for (Channel<Integer> c : channels) {
+            final Queue<Integer> q = c.getQueue();
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Thread.sleep(20);
+                    } catch (InterruptedException e) {
+                    }
+                    q.close();
+                }
+            });
+            try {
+                q.popBatch(4, 5, TimeUnit.SECONDS);
+                fail();
+            } catch (ReceiveError e) {
+            }
+            try {
+                q.popBatch(4, 5, TimeUnit.SECONDS);
+                fail();
+            } catch (ChannelClosedError e) {
+            }
+            try {
+                q.pop(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ChannelClosedError e) {
+            }
+        }
+    }
+}
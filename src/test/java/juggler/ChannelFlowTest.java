@@ -0,0 +1,267 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class ChannelFlowTest extends TestCase {
+
+    static class Recorder implements Flow.Subscriber<Integer> {
+        final List<Integer> values = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Flow.Subscription subscription;
+        volatile Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            values.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+
+    private static void awaitSize(List<?> values, int size) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (values.size() < size && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * It should deliver no more than the subscriber requested.
+     */
+    public void testDemand() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(10);
+        for (int i = 0; i < 10; i++) {
+            c.send(i);
+        }
+        Recorder recorder = new Recorder();
+        c.publisher().subscribe(recorder);
+        recorder.subscription.request(3);
+        awaitSize(recorder.values, 3);
+        Thread.sleep(20);
+        assertEquals(3, recorder.values.size());
+        assertEquals(7, c.getQueue().drainTo(new ArrayList<Integer>(), 100));
+    }
+
+    /**
+     * It should wait for values without parking a goroutine, then complete
+     * when the channel is closed.
+     */
+    public void testWaitAndComplete() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        Recorder recorder = new Recorder();
+        c.publisher().subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        Thread.sleep(20);
+        assertEquals(1, c.getQueue().pops.size());
+        for (int i = 0; i < 100; i++) {
+            c.send(i);
+        }
+        awaitSize(recorder.values, 100);
+        assertEquals(99, recorder.values.get(99).intValue());
+        c.close();
+        assertTrue(recorder.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    public void testInvalidRequest() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        Recorder recorder = new Recorder();
+        c.publisher().subscribe(recorder);
+        recorder.subscription.request(0);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (recorder.error == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+    }
+
+    /**
+     * An error raised while a value is being delivered should only be
+     * signalled once that delivery returns.
+     */
+    public void testSerialSignals() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        c.send(1);
+        final CountDownLatch delivering = new CountDownLatch(1);
+        final List<String> signals = Collections.synchronizedList(new ArrayList<String>());
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onNext(Integer item) {
+                signals.add("next");
+                delivering.countDown();
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                signals.add("returned");
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                signals.add("error");
+            }
+        };
+        c.publisher().subscribe(recorder);
+        recorder.subscription.request(1);
+        assertTrue(delivering.await(5, TimeUnit.SECONDS));
+        recorder.subscription.request(-1);
+        awaitSize(signals, 3);
+        assertEquals("[next, returned, error]", signals.toString());
+    }
+
+    /**
+     * It should complete a subscriber to a closed channel without demand.
+     */
+    public void testSubscribeClosed() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        Flow.Publisher<Integer> publisher = c.publisher();
+        c.close();
+        Recorder recorder = new Recorder();
+        publisher.subscribe(recorder);
+        assertTrue(recorder.completed.await(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * It should withdraw its receive when cancelled.
+     */
+    public void testCancel() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        Recorder recorder = new Recorder();
+        c.publisher().subscribe(recorder);
+        recorder.subscription.request(1);
+        Thread.sleep(20);
+        recorder.subscription.cancel();
+        Thread.sleep(20);
+        assertTrue(c.getQueue().operations.isEmpty());
+        c.send(1);
+        assertEquals(1, c.receive().intValue());
+    }
+
+    /**
+     * A value received just as the subscription is cancelled should still
+     * reach the subscriber, never be taken off the channel and dropped.
+     */
+    public void testCancelRace() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(1);
+        for (int i = 0; i < 500; i++) {
+            Recorder recorder = new Recorder();
+            c.publisher().subscribe(recorder);
+            recorder.subscription.request(1);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (c.getQueue().pops.size() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(0, 1000);
+            }
+            c.send(i);
+            recorder.subscription.cancel();
+            Integer value = null;
+            while (recorder.values.isEmpty() && value == null
+                    && System.currentTimeMillis() < deadline) {
+                value = c.tryReceive();
+            }
+            if (value == null) {
+                awaitSize(recorder.values, 1);
+                assertEquals(Collections.singletonList(i), recorder.values);
+            } else {
+                assertEquals(i, value.intValue());
+            }
+        }
+    }
+
+    /**
+     * The values drained along with one the subscriber failed on should be
+     * handed back to the channel.
+     */
+    public void testFailingSubscriber() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        for (int i = 0; i < 4; i++) {
+            c.send(i);
+        }
+        Recorder recorder = new Recorder() {
+            @Override
+            public void onNext(Integer item) {
+                super.onNext(item);
+                throw new IllegalStateException();
+            }
+        };
+        c.publisher().subscribe(recorder);
+        recorder.subscription.request(4);
+        awaitSize(recorder.values, 1);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(i, c.receive(5000).intValue());
+        }
+        assertEquals(Collections.singletonList(0), recorder.values);
+    }
+
+    /**
+     * It should only request as much as the channel has room for.
+     */
+    public void testSubscriber() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>(4);
+        SubmissionPublisher<Integer> publisher = new SubmissionPublisher<Integer>();
+        publisher.subscribe(c.subscriber());
+        for (int i = 0; i < 100; i++) {
+            publisher.submit(i);
+        }
+        Thread.sleep(50);
+        assertTrue(c.getQueue().pushes.size() <= 4);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, c.receive().intValue());
+        }
+        publisher.close();
+    }
+
+    /**
+     * It should request a number of values, not the byte capacity of an
+     * off-heap channel.
+     */
+    public void testOffHeapSubscriber() {
+        Channel<Integer> c = Channel.offHeap(4096, Codecs.INTEGER);
+        final long[] requested = new long[1];
+        c.subscriber().onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                requested[0] += n;
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        assertEquals(ChannelPublisher.BATCH, requested[0]);
+        c.close();
+    }
+
+    /**
+     * Values should flow from one channel to another with backpressure.
+     */
+    public void testChannelToChannel() throws InterruptedException {
+        Channel<Integer> from = new Channel<Integer>(2);
+        Channel<Integer> to = new Channel<Integer>(2);
+        from.publisher().subscribe(to.subscriber());
+        for (int i = 0; i < 1000; i++) {
+            from.send(i);
+            assertEquals(i, to.receive().intValue());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class ChannelSetTest extends TestCase {
+
+    /**
+     * It should receive every value sent to any member channel.
+     */
+    public void testFanIn() {
+        final int channels = 1000;
+        final int n = 20000;
+        final List<Channel<Integer>> members = new ArrayList<Channel<Integer>>();
+        ChannelSet<Integer> set = new ChannelSet<Integer>();
+        for (int i = 0; i < channels; i++) {
+            Channel<Integer> c = new Channel<Integer>(4);
+            members.add(c);
+            assertTrue(set.add(c));
+        }
+        assertEquals(channels, set.size());
+
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= n; i++) {
+                    members.get((i * 7919) % channels).send(i);
+                }
+            }
+        });
+
+        long sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += set.receive();
+        }
+        assertEquals(((long) n) * (n + 1) / 2, sum);
+        assertNull(set.receive(10));
+        for (Channel<Integer> c : members) {
+            c.close();
+        }
+    }
+
+    /**
+     * It should report the channel each value came from.
+     */
+    public void testReceiveBlock() {
+        final Channel<String> a = new Channel<String>(1);
+        final Channel<String> b = new Channel<String>(1);
+        ChannelSet<String> set = new ChannelSet<String>();
+        set.add(a);
+        set.add(b);
+        b.send("b");
+
+        final List<Channel<String>> from = new ArrayList<Channel<String>>();
+        assertTrue(set.receive(100, new ChannelSet.ReceiveBlock<String>() {
+            @Override
+            public void yield(Channel<String> channel, String value) {
+                assertEquals("b", value);
+                from.add(channel);
+            }
+        }));
+        assertSame(b, from.get(0));
+        a.close();
+        b.close();
+    }
+
+    /**
+     * It should see values already buffered when the channel is added.
+     */
+    public void testAddReadyChannel() {
+        Channel<Integer> c = new Channel<Integer>(2);
+        c.send(1);
+        c.send(2);
+        ChannelSet<Integer> set = new ChannelSet<Integer>();
+        set.add(c);
+        assertEquals(Integer.valueOf(1), set.receive(100));
+        assertEquals(Integer.valueOf(2), set.receive(100));
+        assertNull(set.receive(10));
+        c.close();
+    }
+
+    /**
+     * It should take values from senders waiting on unbuffered channels.
+     */
+    public void testUnbuffered() {
+        final Channel<Integer> c = new Channel<Integer>();
+        ChannelSet<Integer> set = new ChannelSet<Integer>();
+        set.add(c);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    c.send(i);
+                }
+            }
+        });
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), set.receive());
+        }
+        c.close();
+    }
+
+    /**
+     * It should drop closed and removed channels.
+     */
+    public void testCloseAndRemove() {
+        Channel<Integer> a = new Channel<Integer>(1);
+        Channel<Integer> b = new Channel<Integer>(1);
+        ChannelSet<Integer> set = new ChannelSet<Integer>();
+        set.add(a);
+        set.add(b);
+
+        a.close();
+        assertNull(set.receive(10));
+        assertFalse(set.contains(a));
+
+        b.send(1);
+        assertTrue(set.remove(b));
+        assertFalse(set.remove(b));
+        assertNull(set.receive(10));
+        assertTrue(set.isEmpty());
+        assertEquals(Integer.valueOf(1), b.receive());
+        b.close();
+    }
+
+    /**
+     * It should not let a channel join two sets.
+     */
+    public void testOneSetPerChannel() {
+        Channel<Integer> c = new Channel<Integer>(1);
+        ChannelSet<Integer> first = new ChannelSet<Integer>();
+        ChannelSet<Integer> second = new ChannelSet<Integer>();
+        assertTrue(first.add(c));
+        assertFalse(first.add(c));
+        try {
+            second.add(c);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        assertFalse(second.contains(c));
+        first.remove(c);
+        assertTrue(second.add(c));
+        c.close();
+    }
+
+    /**
+     * It should serve SPSC and MPMC channels as well.
+     */
+    public void testLockFreeChannels() {
+        Channel<Integer> spsc = Channel.spsc(4);
+        Channel<Integer> mpmc = Channel.mpmc(4);
+        ChannelSet<Integer> set = new ChannelSet<Integer>();
+        set.add(spsc);
+        set.add(mpmc);
+        spsc.send(1);
+        mpmc.send(2);
+        assertEquals(3, set.receive(100) + set.receive(100));
+        spsc.close();
+        mpmc.close();
+    }
+}
@@ -0,0 +1,112 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import junit.framework.TestCase;
+
+public class ChannelStreamTest extends TestCase {
+
+    private static void sendThenClose(final Channel<Integer> c, final int n) {
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    c.send(i);
+                }
+                while (c.poppable()) {
+                    Thread.yield();
+                }
+                c.close();
+            }
+        });
+    }
+
+    /**
+     * It should iterate in order and stop when the channel is closed.
+     */
+    public void testIterator() {
+        Channel<Integer> c = new Channel<Integer>(4);
+        sendThenClose(c, 1000);
+        int expected = 0;
+        for (Integer i : c) {
+            assertEquals(expected++, i.intValue());
+        }
+        assertEquals(1000, expected);
+    }
+
+    public void testUnbuffered() {
+        Channel<Integer> c = new Channel<Integer>();
+        sendThenClose(c, 100);
+        List<Integer> values = new ArrayList<Integer>();
+        for (Integer i : c) {
+            values.add(i);
+        }
+        assertEquals(100, values.size());
+        assertEquals(99, values.get(99).intValue());
+    }
+
+    public void testClosedChannel() {
+        Channel<Integer> c = new Channel<Integer>(4);
+        c.send(1);
+        Spliterator<Integer> s = c.spliterator();
+        c.close();
+        assertFalse(s.tryAdvance(null));
+    }
+
+    public void testNullValues() {
+        Channel<Integer> c = Channel.unbounded();
+        c.send(null);
+        c.send(2);
+        Spliterator<Integer> s = c.spliterator();
+        final List<Integer> values = new ArrayList<Integer>();
+        Consumer<Integer> add = new Consumer<Integer>() {
+            @Override
+            public void accept(Integer value) {
+                values.add(value);
+            }
+        };
+        s.tryAdvance(add);
+        s.tryAdvance(add);
+        assertNull(values.get(0));
+        assertEquals(2, values.get(1).intValue());
+    }
+
+    public void testStream() {
+        Channel<Integer> c = Channel.mpmc(16);
+        sendThenClose(c, 10000);
+        long sum = 0;
+        for (Integer i : c.stream().collect(Collectors.toList())) {
+            sum += i;
+        }
+        assertEquals(49995000L, sum);
+    }
+
+    /**
+     * A parallel stream should receive every value exactly once.
+     */
+    public void testParallelStream() {
+        Channel<Integer> c = new Channel<Integer>(16);
+        sendThenClose(c, 10000);
+        List<Integer> values = c.stream().parallel().collect(Collectors.toList());
+        assertEquals(10000, values.size());
+        assertEquals(10000, new HashSet<Integer>(values).size());
+    }
+
+    public void testSplit() {
+        Channel<Integer> c = new Channel<Integer>(4);
+        Spliterator<Integer> s = c.spliterator();
+        int leaves = 1;
+        while (s.trySplit() != null) {
+            leaves += 1;
+        }
+        assertTrue(leaves >= 1);
+        c.close();
+    }
+}
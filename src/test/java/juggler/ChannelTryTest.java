@@ -0,0 +1,130 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import juggler.errors.ChannelClosedError;
+import junit.framework.TestCase;
+
+public class ChannelTryTest extends TestCase {
+
+    private void checkBuffered(Channel<Integer> c) {
+        assertNull(c.tryReceive());
+        assertTrue(c.trySend(1));
+        assertTrue(c.trySend(2));
+        assertFalse(c.trySend(3));
+        assertEquals(1, c.tryReceive().intValue());
+        assertTrue(c.trySend(3));
+        assertEquals(2, c.tryReceive().intValue());
+        assertEquals(3, c.tryReceive().intValue());
+        assertNull(c.tryReceive());
+    }
+
+    public void testBuffered() {
+        checkBuffered(new Channel<Integer>(2));
+    }
+
+    public void testSpsc() {
+        checkBuffered(Channel.<Integer>spsc(2));
+    }
+
+    public void testMpmc() {
+        checkBuffered(Channel.<Integer>mpmc(2));
+    }
+
+    public void testOffHeap() {
+        checkBuffered(Channel.offHeap(16, Codecs.INTEGER));
+    }
+
+    /**
+     * It should not leave an operation behind when it fails.
+     */
+    public void testNothingRegistered() {
+        Channel<Integer> c = new Channel<Integer>(1);
+        c.send(1);
+        assertFalse(c.trySend(2));
+        assertTrue(c.getQueue().operations.isEmpty());
+        assertEquals(1, c.receive().intValue());
+        assertNull(c.tryReceive());
+        assertTrue(c.getQueue().operations.isEmpty());
+    }
+
+    /**
+     * An unbuffered send should only succeed with a receiver waiting.
+     */
+    public void testUnbuffered() throws InterruptedException {
+        final Channel<Integer> c = new Channel<Integer>();
+        assertFalse(c.trySend(1));
+        assertNull(c.tryReceive());
+
+        go(new Runnable() {
+            @Override
+            public void run() {
+                c.send(7);
+            }
+        });
+        assertEquals(7, c.receive(5000).intValue());
+
+        final Channel<Integer> received = new Channel<Integer>(1);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                received.send(c.receive());
+            }
+        });
+        assertTrue(c.send(8, 5000));
+        assertEquals(8, received.receive().intValue());
+    }
+
+    public void testTimeouts() {
+        Channel<?>[] channels = {
+            new Channel<Integer>(1), new Channel<Integer>(),
+            Channel.<Integer>spsc(1), Channel.<Integer>mpmc(1),
+            Channel.offHeap(8, Codecs.INTEGER)
+        };
+        for (Channel<?> channel : channels) {
+            @SuppressWarnings("unchecked")
+            Channel<Integer> c = (Channel<Integer>) channel;
+            long start = System.nanoTime();
+            assertNull(c.receive(20));
+            assertTrue(System.nanoTime() - start >= 15000000L);
+            if (c.getMax() > 0) {
+                assertTrue(c.send(1, 20));
+            }
+            start = System.nanoTime();
+            assertFalse(c.send(2, 20));
+            assertTrue(System.nanoTime() - start >= 15000000L);
+            c.close();
+        }
+    }
+
+    public void testTimedReceiveWakes() {
+        final Channel<Integer> c = Channel.mpmc(4);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                }
+                c.send(5);
+            }
+        });
+        assertEquals(5, c.receive(5000).intValue());
+    }
+
+    public void testClosed() {
+        Channel<Integer> c = new Channel<Integer>(1);
+        Queue<Integer> q = c.getQueue();
+        c.close();
+        try {
+            q.tryPush(1);
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+        try {
+            q.tryPop();
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+    }
+}
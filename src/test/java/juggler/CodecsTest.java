@@ -0,0 +1,60 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+public class CodecsTest extends TestCase {
+
+    private <T> T roundTrip(Codec<T> codec, T value) {
+        return codec.decode(codec.encode(value));
+    }
+
+    public void testScalars() {
+        assertEquals("h\u00e9llo", roundTrip(Codecs.STRING, "h\u00e9llo"));
+        assertEquals(Boolean.TRUE, roundTrip(Codecs.BOOLEAN, true));
+        assertEquals(Byte.valueOf((byte) -3), roundTrip(Codecs.BYTE, (byte) -3));
+        assertEquals(Short.valueOf((short) 300), roundTrip(Codecs.SHORT, (short) 300));
+        assertEquals(Character.valueOf('x'), roundTrip(Codecs.CHARACTER, 'x'));
+        assertEquals(Integer.valueOf(-42), roundTrip(Codecs.INTEGER, -42));
+        assertEquals(Long.valueOf(Long.MAX_VALUE), roundTrip(Codecs.LONG, Long.MAX_VALUE));
+        assertEquals(Float.valueOf(1.5f), roundTrip(Codecs.FLOAT, 1.5f));
+        assertEquals(Double.valueOf(Math.PI), roundTrip(Codecs.DOUBLE, Math.PI));
+    }
+
+    public void testArrays() {
+        byte[] bytes = new byte[] { 1, 2, 3 };
+        byte[] copy = roundTrip(Codecs.BYTES, bytes);
+        assertNotSame(bytes, copy);
+        assertTrue(Arrays.equals(bytes, copy));
+
+        int[] ints = new int[] { 1, -2, Integer.MIN_VALUE };
+        assertTrue(Arrays.equals(ints, roundTrip(Codecs.INTS, ints)));
+
+        long[] longs = new long[] { 1L, -2L, Long.MIN_VALUE };
+        assertTrue(Arrays.equals(longs, roundTrip(Codecs.LONGS, longs)));
+
+        double[] doubles = new double[] { 1.0, -2.5, Double.NaN };
+        assertTrue(Arrays.equals(doubles, roundTrip(Codecs.DOUBLES, doubles)));
+    }
+
+    public void testFixedWidth() {
+        assertEquals(4, Codecs.INTEGER.encode(7).length);
+        assertEquals(8, Codecs.DOUBLE.encode(7.0).length);
+        assertEquals(12, Codecs.INTS.encode(new int[3]).length);
+    }
+
+    public void testForClass() {
+        assertSame(Codecs.STRING, Codecs.forClass(String.class));
+        assertSame(Codecs.INTEGER, Codecs.forClass(Integer.class));
+        assertSame(Codecs.DOUBLES, Codecs.forClass(double[].class));
+        assertSame(Codecs.serialization(), Codecs.forClass(ArrayList.class));
+    }
+
+    public void testSerialization() {
+        ArrayList<String> list = new ArrayList<String>();
+        list.add("a");
+        assertEquals(list, roundTrip(Codecs.<ArrayList<String>>serialization(), list));
+    }
+}
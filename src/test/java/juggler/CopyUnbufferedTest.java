@@ -0,0 +1,39 @@
+package juggler;
+
+import java.util.ArrayList;
+
+import junit.framework.TestCase;
+
+public class CopyUnbufferedTest extends TestCase {
+
+    /**
+     * It should hand over the sent object itself by default.
+     */
+    public void testReference() {
+        Unbuffered<ArrayList<String>> queue = new Unbuffered<ArrayList<String>>();
+        ArrayList<String> sent = new ArrayList<String>();
+        sent.add("a");
+
+        queue.deferredPush(sent);
+
+        assertSame(sent, queue.pop());
+    }
+
+    /**
+     * It should hand over a copy taken at send time when copying.
+     */
+    public void testCopy() {
+        Unbuffered<ArrayList<String>> queue = new Unbuffered<ArrayList<String>>(
+                Codecs.<ArrayList<String>>serialization());
+        ArrayList<String> sent = new ArrayList<String>();
+        sent.add("a");
+
+        queue.deferredPush(sent);
+        sent.add("b");
+        ArrayList<String> received = queue.pop();
+
+        assertNotSame(sent, received);
+        assertEquals(1, received.size());
+        assertEquals("a", received.get(0));
+    }
+}
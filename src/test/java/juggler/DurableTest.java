@@ -0,0 +1,181 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import junit.framework.TestCase;
+
+public class DurableTest extends TestCase {
+
+    File directory;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("durable", "");
+        directory.delete();
+    }
+
+    protected void tearDown() throws Exception {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    public void testOrder() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 256, 8);
+        assertFalse(queue.poppable());
+        for (int i = 0; i < 100; i++) {
+            queue.push("value " + i);
+            assertEquals("value " + i, queue.pop());
+        }
+        queue.close();
+    }
+
+    /**
+     * It should receive after a restart what was not received before it.
+     */
+    public void testResume() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 256, 1);
+        for (int i = 0; i < 50; i++) {
+            queue.push("value " + i);
+        }
+        for (int i = 0; i < 20; i++) {
+            assertEquals("value " + i, queue.pop());
+        }
+        queue.close();
+
+        queue = new Durable<String>(directory, Codecs.STRING, 256, 1);
+        assertEquals(30, queue.size());
+        for (int i = 20; i < 50; i++) {
+            assertEquals("value " + i, queue.pop());
+        }
+        assertFalse(queue.poppable());
+        queue.close();
+    }
+
+    /**
+     * It should replay from the last checkpoint when it was not closed.
+     */
+    public void testResumeWithoutClose() {
+        Durable<Integer> queue = new Durable<Integer>(directory, Codecs.INTEGER, 128, 4);
+        for (int i = 0; i < 10; i++) {
+            queue.push(i);
+        }
+        for (int i = 0; i < 6; i++) {
+            queue.pop();
+        }
+
+        queue = new Durable<Integer>(directory, Codecs.INTEGER, 128, 4);
+        assertEquals(6, queue.size());
+        assertEquals(4, queue.pop().intValue());
+        queue.close();
+    }
+
+    /**
+     * It should delete segments once they have been received.
+     */
+    public void testSegmentsDeleted() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        for (int i = 0; i < 40; i++) {
+            queue.push("value " + i);
+        }
+        assertTrue(directory.list().length > 3);
+        List<String> out = new ArrayList<String>();
+        assertEquals(40, queue.drainTo(out, 100));
+        assertEquals("value 39", out.get(39));
+        assertEquals(2, directory.list().length);
+        queue.close();
+    }
+
+    public void testEmptyValues() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        queue.push("");
+        queue.push("");
+        queue.close();
+        queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        assertEquals(2, queue.size());
+        assertEquals("", queue.pop());
+        queue.close();
+    }
+
+    public void testOversizedValue() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        try {
+            queue.push(new String(new char[57]));
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+        queue.push(new String(new char[56]));
+        queue.close();
+    }
+
+    public void testClosed() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        queue.close();
+        try {
+            queue.push("x");
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+    }
+
+    public void testConcurrentSenders() throws InterruptedException, IOException {
+        final Channel<Integer> c = Channel.durable(directory, Codecs.INTEGER);
+        final int n = 1000;
+        final WaitGroup wg = new WaitGroup();
+        for (int t = 0; t < 4; t++) {
+            wg.add(1);
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < n; i++) {
+                        c.send(i);
+                    }
+                    wg.done();
+                }
+            });
+        }
+        long sum = 0;
+        for (int i = 0; i < 4 * n; i++) {
+            sum += c.receive();
+        }
+        wg.await();
+        assertEquals(4L * n * (n - 1) / 2, sum);
+        c.close();
+    }
+
+    /**
+     * It should complete deferred receives on the next send, and keep
+     * deferred sends across a reopen.
+     */
+    public void testDeferred() {
+        Durable<String> queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        Pop<String> pop = queue.deferredPop();
+        assertFalse(pop.received());
+        queue.push("a");
+        assertTrue(pop.received());
+        assertEquals("a", pop.getObject());
+        assertEquals(0, queue.size());
+
+        assertTrue(queue.deferredPush("b").sent());
+        try {
+            queue.deferredPush("a value far too long for a 64 byte segment, by any measure");
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+        queue.close();
+
+        queue = new Durable<String>(directory, Codecs.STRING, 64, 1);
+        assertEquals("b", queue.pop());
+        queue.close();
+    }
+}
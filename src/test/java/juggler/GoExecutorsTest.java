@@ -0,0 +1,95 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class GoExecutorsTest extends TestCase {
+
+    private void assertRuns(GoExecutor executor) throws InterruptedException {
+        final int n = 100;
+        final CountDownLatch done = new CountDownLatch(n);
+        try {
+            for (int i = 0; i < n; i++) {
+                Juggler.go(executor, new Runnable() {
+                    @Override
+                    public void run() {
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testVirtualThreads() throws InterruptedException {
+        assertRuns(GoExecutors.virtualThreads());
+    }
+
+    public void testPlatformPool() throws InterruptedException {
+        assertRuns(GoExecutors.platformPool(4));
+    }
+
+    public void testForkJoin() throws InterruptedException {
+        assertRuns(GoExecutors.forkJoin(4));
+    }
+
+    public void testSingleThreaded() throws InterruptedException {
+        assertRuns(GoExecutors.singleThreaded());
+    }
+
+    /**
+     * should run goroutines in launch order on the single-threaded loop
+     */
+    public void testSingleThreadedOrder() throws InterruptedException {
+        GoExecutor executor = GoExecutors.singleThreaded();
+        final List<Integer> order = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch done = new CountDownLatch(1);
+        for (int i = 0; i < 10; i++) {
+            final int j = i;
+            Juggler.go(executor, new Runnable() {
+                @Override
+                public void run() {
+                    order.add(j);
+                }
+            });
+        }
+        Juggler.go(executor, new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, order.get(i).intValue());
+        }
+    }
+
+    public void testGlobalExecutor() throws InterruptedException {
+        GoExecutor previous = Juggler.getExecutor();
+        GoExecutor executor = GoExecutors.platformPool(2);
+        Juggler.setExecutor(executor);
+        try {
+            final CountDownLatch done = new CountDownLatch(1);
+            assertNull(Juggler.go(new Runnable() {
+                @Override
+                public void run() {
+                    done.countDown();
+                }
+            }));
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        } finally {
+            Juggler.setExecutor(previous);
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import juggler.errors.ConstructorMissingError;
+import junit.framework.TestCase;
+
+public class JugglerTest extends TestCase {
+
+    /**
+     * should return to the caller before the goroutine completes
+     */
+    public void testGoIsConcurrent() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch finished = new CountDownLatch(1);
+
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    if (started.await(1, TimeUnit.SECONDS)) {
+                        finished.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.countDown();
+
+        assertTrue(finished.await(1, TimeUnit.SECONDS));
+    }
+
+    /**
+     * should run many goroutines at once
+     */
+    public void testManyGoroutines() throws InterruptedException {
+        final int n = 1000;
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(n);
+
+        for (int i = 0; i < n; i++) {
+            go(new Juggler.Consumer<CountDownLatch>() {
+                @Override
+                public void run(CountDownLatch latch) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    latch.countDown();
+                }
+            }, done);
+        }
+        release.countDown();
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+    }
+
+    static class Countdown implements Runnable {
+        private final CountDownLatch latch;
+        private final int times;
+
+        Countdown(CountDownLatch latch, int times) {
+            this.latch = latch;
+            this.times = times;
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < times; i++) {
+                latch.countDown();
+            }
+        }
+    }
+
+    /**
+     * should instantiate the class with the constructor matching the arguments
+     */
+    public void testGoClass() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(6);
+
+        Thread th = go(Countdown.class, done, 3);
+        th.join();
+        go(Countdown.class, done, 3).join();
+
+        assertEquals(0, done.getCount());
+    }
+
+    public void testGoClassWithoutMatchingConstructor() {
+        try {
+            go(Countdown.class, "not a latch");
+            fail();
+        } catch (ConstructorMissingError e) {
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import junit.framework.TestCase;
+
+public class MpmcBufferedTest extends TestCase {
+
+    MpmcBuffered<Integer> queue;
+
+    protected void setUp() throws Exception {
+        queue = new MpmcBuffered<Integer>(3);
+    }
+
+    public void testInvalidQueueSize() {
+        try {
+            new MpmcBuffered<Integer>(0);
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+    }
+
+    public void testCapacity() {
+        queue.push(1);
+        queue.push(2);
+        queue.push(3);
+        assertFalse(queue.pushable());
+        assertEquals(3, queue.size());
+    }
+
+    /**
+     * It should enqueue and dequeue in order across wraparound.
+     */
+    public void testOrder() {
+        for (int i = 0; i < 20; i++) {
+            queue.push(i);
+            queue.push(null);
+            assertEquals(i, queue.pop().intValue());
+            assertNull(queue.pop());
+        }
+    }
+
+    /**
+     * It should deliver every value exactly once with many senders and
+     * receivers.
+     */
+    public void testManyProducersAndConsumers() throws InterruptedException {
+        final int producers = 4;
+        final int consumers = 4;
+        final int n = 25000;
+        final Channel<Integer> c = Channel.mpmc(8);
+        final AtomicLong sum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(consumers);
+
+        for (int p = 0; p < producers; p++) {
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= n; i++) {
+                        c.send(i);
+                    }
+                }
+            });
+        }
+        for (int k = 0; k < consumers; k++) {
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < n * producers / consumers; i++) {
+                        sum.addAndGet(c.receive());
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals((long) producers * n * (n + 1) / 2, sum.get());
+        c.close();
+    }
+
+    /**
+     * It should wake a blocked receiver when closed.
+     */
+    public void testCloseWhileReceiving() {
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                queue.close();
+            }
+        });
+        try {
+            queue.pop();
+            fail();
+        } catch (ReceiveError e) {
+        }
+        try {
+            queue.push(1);
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+    }
+
+    /**
+     * It should complete deferred operations from other goroutines' sends
+     * and receives, keeping registered sends ahead of later ones.
+     */
+    public void testDeferred() {
+        Pop<Integer> pop = queue.deferredPop();
+        assertFalse(pop.received());
+        queue.push(1);
+        assertTrue(pop.received());
+        assertEquals(1, pop.getObject().intValue());
+
+        queue.push(2);
+        queue.push(3);
+        queue.push(4);
+        Push<Integer> push = queue.deferredPush(5);
+        assertFalse(queue.tryPush(6));
+        assertEquals(2, queue.pop().intValue());
+        assertTrue(push.sent());
+        assertEquals(3, queue.pop().intValue());
+        assertEquals(4, queue.pop().intValue());
+        assertEquals(5, queue.pop().intValue());
+        assertNull(queue.tryPop());
+    }
+
+    /**
+     * It should take part in selects which have to wait, as a work queue
+     * shared by several receivers does.
+     */
+    public void testSelect() throws InterruptedException {
+        final int consumers = 4;
+        final int n = 10000;
+        final Channel<Integer> work = Channel.mpmc(4);
+        final Channel<Integer> quit = new Channel<Integer>();
+        final AtomicLong sum = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(consumers);
+
+        for (int i = 0; i < consumers; i++) {
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    final boolean[] running = { true };
+                    while (running[0]) {
+                        Selector.select(new Selector.SelectorBlock() {
+                            @Override
+                            public void yield(Selector s) {
+                                s.receiveCase(work, new Selector.ReceiveBlock<Integer>() {
+                                    @Override
+                                    public void yield(Integer value) {
+                                        sum.addAndGet(value);
+                                    }
+                                });
+                                s.receiveCase(quit, new Selector.ReceiveBlock<Integer>() {
+                                    @Override
+                                    public void yield(Integer value) {
+                                        running[0] = false;
+                                    }
+                                });
+                            }
+                        });
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        for (int i = 1; i <= n; i++) {
+            work.send(i);
+        }
+        while (work.getQueue().poppable()) {
+            Thread.sleep(1);
+        }
+        for (int i = 0; i < consumers; i++) {
+            quit.send(0);
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals((long) n * (n + 1) / 2, sum.get());
+        work.close();
+        quit.close();
+    }
+}
@@ -0,0 +1,168 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import junit.framework.TestCase;
+
+public class OffHeapBufferedTest extends TestCase {
+
+    OffHeapBuffered<String> queue;
+
+    protected void setUp() throws Exception {
+        queue = new OffHeapBuffered<String>(64, Codecs.STRING);
+    }
+
+    public void testBuffered() {
+        assertTrue(queue.isBuffered());
+        assertTrue(queue.pushable());
+        assertFalse(queue.poppable());
+    }
+
+    public void testOrder() {
+        for (int i = 0; i < 100; i++) {
+            queue.push("value " + i);
+            assertEquals("value " + i, queue.pop());
+        }
+    }
+
+    /**
+     * It should refuse a value which could never fit.
+     */
+    public void testOversizedValue() {
+        try {
+            queue.push(new String(new char[61]));
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+        queue.push(new String(new char[60]));
+        assertEquals(64, queue.usedBytes());
+    }
+
+    /**
+     * It should block a sender until there are enough free bytes.
+     */
+    public void testBlockWhenFull() throws InterruptedException {
+        final Channel<Integer> c = Channel.offHeap(8 * 10, Codecs.INTEGER);
+        final int n = 1000;
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    c.send(i);
+                }
+            }
+        });
+
+        List<Integer> received = new ArrayList<Integer>();
+        while (received.size() < n) {
+            received.addAll(c.receiveBatch(100, 1000));
+        }
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, received.get(i).intValue());
+        }
+        c.close();
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A tryPush into a full ring should refuse the value without encoding it.
+     */
+    public void testTryPushFullNoAllocation() {
+        queue.push(new String(new char[50]));
+        String value = "value which does not fit";
+        for (int i = 0; i < 100000; i++) {
+            assertFalse(queue.tryPush(value));
+        }
+        long before = allocated();
+        for (int i = 0; i < 100000; i++) {
+            queue.tryPush(value);
+        }
+        assertTrue(allocated() - before < 100000);
+
+        queue.pop();
+        assertTrue(queue.tryPush(value));
+        assertEquals(value, queue.pop());
+    }
+
+    public void testClosed() {
+        queue.close();
+        try {
+            queue.push("a");
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+        try {
+            queue.pop();
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+    }
+
+    /**
+     * It should complete deferred operations from sends and receives,
+     * ahead of later blocking ones.
+     */
+    public void testDeferred() {
+        Pop<String> pop = queue.deferredPop();
+        assertFalse(pop.received());
+        queue.push("a");
+        assertTrue(pop.received());
+        assertEquals("a", pop.getObject());
+        assertFalse(queue.poppable());
+
+        // 64 bytes hold five 7 byte values with their 4 byte headers
+        for (int i = 0; i < 5; i++) {
+            queue.push("value " + i);
+        }
+        Push<String> push = queue.deferredPush("value 5");
+        assertFalse(push.sent());
+        assertFalse(queue.tryPush("x"));
+        assertEquals("value 0", queue.pop());
+        assertTrue(push.sent());
+        for (int i = 1; i <= 5; i++) {
+            assertEquals("value " + i, queue.pop());
+        }
+    }
+
+    /**
+     * It should take part in a select which has to wait.
+     */
+    public void testSelect() {
+        final Channel<String> c = Channel.offHeap(64, Codecs.STRING);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                c.send("hello");
+            }
+        });
+        final List<String> received = new ArrayList<String>();
+        Selector.select(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                s.receiveCase(c, new Selector.ReceiveBlock<String>() {
+                    @Override
+                    public void yield(String value) {
+                        received.add(value);
+                    }
+                });
+            }
+        });
+        assertEquals("hello", received.get(0));
+        c.close();
+    }
+}
@@ -2,7 +2,6 @@ package juggler;
 
 import juggler.errors.Rollback;
 import junit.framework.TestCase;
-import org.apache.commons.lang.SerializationUtils;
 
 import static juggler.Juggler.go;
 
@@ -29,17 +28,17 @@ public class PopTest extends TestCase {
      * It should run multiple times.
      */
     public void testMultiRun() {
-        pop.send(new Pop.PopBlock() {
+        pop.send(new Pop.PopBlock<Long>() {
             @Override
-            public byte[] yield() {
-                return SerializationUtils.serialize(1);
+            public Long yield() {
+                return 1L;
             }
         });
         assertTrue(pop.isReceived());
-        pop.send(new Pop.PopBlock() {
+        pop.send(new Pop.PopBlock<Long>() {
             @Override
-            public byte[] yield() {
-                return SerializationUtils.serialize(2);
+            public Long yield() {
+                return 2L;
             }
         });
         assertTrue(pop.getObject() == 2);
@@ -61,10 +60,10 @@ public class PopTest extends TestCase {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        pop.send(new Pop.PopBlock() {
+        pop.send(new Pop.PopBlock<Long>() {
             @Override
-            public byte[] yield() {
-                return SerializationUtils.serialize(1);
+            public Long yield() {
+                return 1L;
             }
         });
 
@@ -104,9 +103,9 @@ public class PopTest extends TestCase {
      */
     public void testRollback() {
         assertFalse(pop.isReceived());
-        pop.send(new Pop.PopBlock() {
+        pop.send(new Pop.PopBlock<Long>() {
             @Override
-            public byte[] yield() {
+            public Long yield() {
                 throw new Rollback();
             }
         });
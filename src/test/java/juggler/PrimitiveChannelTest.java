@@ -0,0 +1,176 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import junit.framework.TestCase;
+
+public class PrimitiveChannelTest extends TestCase {
+
+    public void testInvalidQueueSize() {
+        try {
+            new IntChannel(-1);
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+    }
+
+    /**
+     * It should enqueue and dequeue in order across wraparound.
+     */
+    public void testBufferedOrder() {
+        IntChannel c = new IntChannel(3);
+        for (int i = 0; i < 20; i++) {
+            c.send(i);
+            c.send(-i);
+            assertEquals(i, c.receiveInt());
+            assertEquals(-i, c.receiveInt());
+        }
+        c.close();
+    }
+
+    public void testBufferedCapacity() {
+        LongChannel c = new LongChannel(2);
+        assertTrue(c.pushable());
+        assertFalse(c.poppable());
+        c.send(Long.MAX_VALUE);
+        c.send(Long.MIN_VALUE);
+        assertFalse(c.pushable());
+        assertTrue(c.poppable());
+        assertEquals(Long.MAX_VALUE, c.receiveLong());
+        assertEquals(Long.MIN_VALUE, c.receiveLong());
+        c.close();
+    }
+
+    /**
+     * It should block the sender of an unbuffered channel until the value
+     * is received.
+     */
+    public void testUnbuffered() throws InterruptedException {
+        final DoubleChannel c = new DoubleChannel();
+        final long[] sentAt = new long[1];
+
+        Thread th = go(new Runnable() {
+            @Override
+            public void run() {
+                c.send(Math.PI);
+                sentAt[0] = System.currentTimeMillis();
+            }
+        });
+
+        Thread.sleep(50);
+        long receivedAt = System.currentTimeMillis();
+        assertEquals(Math.PI, c.receiveDouble(), 0.0);
+        th.join();
+        assertTrue(sentAt[0] >= receivedAt);
+        c.close();
+    }
+
+    /**
+     * It should pass every value through a pipeline of goroutines.
+     */
+    public void testPipeline() {
+        final int n = 10000;
+        final IntChannel in = new IntChannel();
+        final IntChannel out = new IntChannel(16);
+
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    in.send(i);
+                }
+            }
+        });
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    out.send(in.receiveInt() * 2);
+                }
+            }
+        });
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(i * 2, out.receiveInt());
+        }
+        in.close();
+        out.close();
+    }
+
+    /**
+     * It should lose no wake-up when many senders and receivers wait on the
+     * same channel at once.
+     */
+    public void testManyWaiters() throws InterruptedException {
+        for (int max : new int[] {0, 1, 4}) {
+            final IntChannel c = new IntChannel(max);
+            final int n = 5000;
+            final AtomicLong sum = new AtomicLong();
+            List<Thread> threads = new ArrayList<Thread>();
+            for (int t = 0; t < 4; t++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < n; i++) {
+                            c.send(i);
+                        }
+                    }
+                }));
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = 0; i < n; i++) {
+                            sum.addAndGet(c.receiveInt());
+                        }
+                    }
+                }));
+            }
+            for (Thread thread : threads) {
+                thread.start();
+            }
+            for (Thread thread : threads) {
+                thread.join(10000);
+                assertFalse(thread.isAlive());
+            }
+            assertEquals(4L * n * (n - 1) / 2, sum.get());
+            c.close();
+        }
+    }
+
+    public void testCloseWhileReceiving() {
+        final IntChannel c = new IntChannel();
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                c.close();
+            }
+        });
+        try {
+            c.receiveInt();
+            fail();
+        } catch (ReceiveError e) {
+        }
+        try {
+            c.send(1);
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+        try {
+            c.close();
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package juggler;
+
+import junit.framework.TestCase;
+
+public class RingBufferTest extends TestCase {
+
+    RingBuffer<Integer> ring;
+
+    protected void setUp() throws Exception {
+        ring = new RingBuffer<Integer>(3);
+    }
+
+    public void testEmpty() {
+        assertTrue(ring.isEmpty());
+        assertFalse(ring.isFull());
+        assertEquals(0, ring.size());
+        assertEquals(3, ring.capacity());
+        assertNull(ring.poll());
+    }
+
+    public void testFull() {
+        assertTrue(ring.offer(1));
+        assertTrue(ring.offer(2));
+        assertTrue(ring.offer(3));
+        assertTrue(ring.isFull());
+        assertFalse(ring.offer(4));
+        assertEquals(3, ring.size());
+    }
+
+    /**
+     * It should stay in FIFO order as the indices wrap around.
+     */
+    public void testWraparound() {
+        int next = 0;
+        for (int i = 0; i < 10; i++) {
+            ring.offer(i);
+            if (i % 2 == 1) {
+                assertEquals(next++, ring.poll().intValue());
+                assertEquals(next++, ring.poll().intValue());
+            }
+        }
+        assertTrue(ring.isEmpty());
+    }
+
+    public void testClear() {
+        ring.offer(1);
+        ring.offer(2);
+        ring.poll();
+        ring.offer(3);
+        ring.clear();
+        assertTrue(ring.isEmpty());
+        assertTrue(ring.offer(4));
+        assertEquals(4, ring.poll().intValue());
+    }
+}
@@ -0,0 +1,72 @@
+package juggler;
+
+import junit.framework.TestCase;
+
+public class SegmentedBufferTest extends TestCase {
+
+    SegmentedBuffer<Integer> buffer;
+
+    protected void setUp() throws Exception {
+        buffer = new SegmentedBuffer<Integer>(4);
+    }
+
+    public void testEmpty() {
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+        assertEquals(1, buffer.segments());
+    }
+
+    /**
+     * It should stay in FIFO order across segment boundaries.
+     */
+    public void testOrder() {
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+        }
+        assertEquals(10, buffer.size());
+        assertEquals(3, buffer.segments());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, buffer.poll().intValue());
+        }
+        assertTrue(buffer.isEmpty());
+    }
+
+    /**
+     * It should give segments back as the backlog drains.
+     */
+    public void testShrink() {
+        for (int i = 0; i < 40; i++) {
+            buffer.offer(i);
+        }
+        assertEquals(10, buffer.segments());
+        for (int i = 0; i < 36; i++) {
+            buffer.poll();
+        }
+        assertEquals(1, buffer.segments());
+    }
+
+    /**
+     * It should not grow when kept at a steady backlog.
+     */
+    public void testSteadyState() {
+        for (int i = 0; i < 6; i++) {
+            buffer.offer(i);
+        }
+        for (int i = 6; i < 1000; i++) {
+            buffer.offer(i);
+            assertEquals(i - 6, buffer.poll().intValue());
+            assertTrue(buffer.segments() <= 3);
+        }
+    }
+
+    public void testClear() {
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(i);
+        }
+        buffer.clear();
+        assertTrue(buffer.isEmpty());
+        assertEquals(1, buffer.segments());
+        buffer.offer(1);
+        assertEquals(1, buffer.poll().intValue());
+    }
+}
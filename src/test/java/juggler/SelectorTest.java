@@ -1,28 +1,36 @@
 package juggler;
 
+import static juggler.Juggler.go;
 import static juggler.Selector.select;
 
 import juggler.errors.BlockMissingError;
+import juggler.errors.TooManyChannelsError;
 import junit.framework.TestCase;
 
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SelectorTest extends TestCase {
 
     /**
-     * It should return immediately on empty select block.
+     * It should return immediately on empty select block. How long that
+     * takes depends on the machine, and on class loading the first time,
+     * so only returning at all is checked.
      */
     public void testEmptyBlock() {
-        long s = System.currentTimeMillis();
+        final LinkedList<String> r = new LinkedList<String>();
         select(new Selector.SelectorBlock() {
             @Override
             public void yield(Selector selector) {
+                r.add("yield");
             }
         });
+        r.add("returned");
 
-        long t = System.currentTimeMillis() - s;
-        assertTrue(t > -5);
-        assertTrue(t < 5);
+        assertEquals("[yield, returned]", r.toString());
     }
 
     /**
@@ -44,9 +52,10 @@ public class SelectorTest extends TestCase {
         });
 
         assertEquals("timeout", r.getFirst());
+        // generous above: a loaded machine may wake the select late
         long t = System.currentTimeMillis() - now;
-        assertTrue(t > 95);
-        assertTrue(t > 105);
+        assertTrue(t >= 95);
+        assertTrue(t < 1000);
     }
 
     /**
@@ -80,4 +89,305 @@ public class SelectorTest extends TestCase {
             fail();
         }
     }
+
+    /**
+     * It should not deadlock when selects name the same channels in
+     * opposite orders, and every value should be received exactly once.
+     */
+    public void testOppositeOrders() throws InterruptedException {
+        final Channel<Integer> a = new Channel<Integer>();
+        final Channel<Integer> b = new Channel<Integer>();
+        final int n = 2000;
+        final AtomicInteger sum = new AtomicInteger();
+        final WaitGroup wg = new WaitGroup();
+        wg.add(2);
+
+        final Selector.ReceiveBlock<Integer> add = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer value) {
+                sum.addAndGet(value);
+            }
+        };
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n / 2; i++) {
+                    select(new Selector.SelectorBlock() {
+                        @Override
+                        public void yield(Selector s) {
+                            s.receiveCase(a, add);
+                            s.receiveCase(b, add);
+                        }
+                    });
+                }
+                wg.done();
+            }
+        });
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n / 2; i++) {
+                    select(new Selector.SelectorBlock() {
+                        @Override
+                        public void yield(Selector s) {
+                            s.receiveCase(b, add);
+                            s.receiveCase(a, add);
+                        }
+                    });
+                }
+                wg.done();
+            }
+        });
+
+        for (int i = 1; i <= n; i++) {
+            (i % 2 == 0 ? a : b).send(i);
+        }
+        wg.await();
+        assertEquals(n * (n + 1) / 2, sum.get());
+        a.close();
+        b.close();
+    }
+
+    /**
+     * It should not lose a send which meets the withdrawn case of a select
+     * that completed on another channel.
+     */
+    public void testLosingCasesAreWithdrawn() {
+        final Channel<Integer> a = new Channel<Integer>(1);
+        final Channel<Integer> b = new Channel<Integer>(1);
+        final LinkedList<Integer> r = new LinkedList<Integer>();
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                a.send(1);
+            }
+        });
+        select(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                s.receiveCase(a, new Selector.ReceiveBlock<Integer>() {
+                    @Override
+                    public void yield(Integer value) {
+                        r.add(value);
+                    }
+                });
+                s.receiveCase(b, new Selector.ReceiveBlock<Integer>() {
+                    @Override
+                    public void yield(Integer value) {
+                        r.add(value);
+                    }
+                });
+            }
+        });
+
+        b.send(2);
+        assertEquals(Integer.valueOf(2), b.receive());
+        assertEquals(1, r.size());
+        assertEquals(Integer.valueOf(1), r.getFirst());
+        a.close();
+        b.close();
+    }
+
+    /**
+     * It should select a compiled selector repeatedly, waiting when no
+     * case is ready.
+     */
+    public void testCompiledSelect() {
+        final Channel<Integer> a = new Channel<Integer>();
+        final Channel<Integer> b = new Channel<Integer>();
+        final int n = 1000;
+        final int[] sum = new int[1];
+        final Selector.ReceiveBlock<Integer> add = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer value) {
+                sum[0] += value;
+            }
+        };
+        Selector selector = Selector.compile(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                s.receiveCase(a, add);
+                s.receiveCase(b, add);
+            }
+        });
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 1; i <= n; i++) {
+                    (i % 3 == 0 ? a : b).send(i);
+                }
+            }
+        });
+
+        for (int i = 0; i < n; i++) {
+            selector.select();
+        }
+        assertEquals(n * (n + 1) / 2, sum[0]);
+        assertTrue(a.getQueue().operations.isEmpty());
+        assertTrue(b.getQueue().operations.isEmpty());
+        a.close();
+        b.close();
+    }
+
+    private static long allocated() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A compiled select over buffered channels should allocate nothing.
+     */
+    public void testCompiledSelectNoAllocation() {
+        final Channel<Integer> a = new Channel<Integer>(4);
+        final Channel<Integer> b = new Channel<Integer>(4);
+        final Integer value = 7;
+        final Selector.ReceiveBlock<Integer> ignore = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer v) {
+            }
+        };
+        Selector selector = Selector.compile(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                s.receiveCase(a, ignore);
+                s.sendCase(b, value);
+                s.defaultCase(null);
+            }
+        });
+
+        long bytes = 0;
+        for (int round = 0; round < 2; round++) {
+            long before = allocated();
+            for (int i = 0; i < 100000; i++) {
+                a.trySend(value);
+                selector.select(); // receives from a
+                selector.select(); // sends to b
+                b.tryReceive();
+                selector.select(); // default
+            }
+            bytes = allocated() - before;
+        }
+        assertTrue(bytes < 100000);
+        a.close();
+        b.close();
+    }
+
+    /**
+     * A compiled select which has to wait for every value should allocate
+     * nothing on the selecting goroutine either.
+     */
+    public void testCompiledSelectWaitingNoAllocation() throws InterruptedException {
+        final Channel<Integer> a = new Channel<Integer>(1);
+        final Channel<Integer> ack = new Channel<Integer>(1);
+        final Integer value = 7;
+        final int rounds = 2;
+        final int n = 20000;
+        final Selector.ReceiveBlock<Integer> ignore = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer v) {
+            }
+        };
+        Selector selector = Selector.compile(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                s.receiveCase(a, ignore);
+            }
+        });
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < rounds * n; i++) {
+                    a.send(value);
+                    ack.receive();
+                }
+            }
+        });
+        sender.start();
+
+        long bytes = 0;
+        for (int round = 0; round < rounds; round++) {
+            long before = allocated();
+            for (int i = 0; i < n; i++) {
+                selector.select();
+                ack.trySend(value);
+            }
+            bytes = allocated() - before;
+        }
+        sender.join();
+        assertTrue(bytes < 100000);
+        a.close();
+        ack.close();
+    }
+
+    /**
+     * It should select over as many channels as it can hold locked, and
+     * refuse more rather than give up holding them all.
+     */
+    public void testManyChannels() {
+        final List<Channel<Integer>> channels = new ArrayList<Channel<Integer>>();
+        for (int i = 0; i < Selector.MAX_CHANNELS; i++) {
+            channels.add(new Channel<Integer>(1));
+        }
+        final LinkedList<Integer> r = new LinkedList<Integer>();
+        final Selector.ReceiveBlock<Integer> record = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer value) {
+                r.add(value);
+            }
+        };
+        Selector selector = Selector.compile(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                for (Channel<Integer> c : channels) {
+                    s.receiveCase(c, record);
+                }
+            }
+        });
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                channels.get(Selector.MAX_CHANNELS - 1).send(1);
+                channels.get(7).send(2);
+            }
+        });
+
+        selector.select();
+        selector.select();
+        assertEquals(2, r.size());
+        assertEquals(3, r.get(0) + r.get(1));
+        for (Channel<Integer> c : channels) {
+            assertTrue(c.getQueue().operations.isEmpty());
+        }
+
+        final Channel<Integer> extra = new Channel<Integer>(1);
+        extra.send(3);
+        try {
+            Selector.select(new Selector.SelectorBlock() {
+                @Override
+                public void yield(Selector s) {
+                    for (Channel<Integer> c : channels) {
+                        s.receiveCase(c, record);
+                    }
+                    s.receiveCase(extra, record);
+                }
+            });
+            fail();
+        } catch (TooManyChannelsError e) {
+        }
+        assertEquals(3, extra.receive().intValue());
+        for (Channel<Integer> c : channels) {
+            c.close();
+        }
+        extra.close();
+    }
 }
@@ -0,0 +1,127 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import juggler.errors.InvalidQueueSizeError;
+import junit.framework.TestCase;
+
+public class SpillingTest extends TestCase {
+
+    Spilling<Integer> queue;
+
+    protected void setUp() throws Exception {
+        queue = new Spilling<Integer>(4, Codecs.INTEGER);
+    }
+
+    public void testInvalidSize() {
+        try {
+            new Spilling<Integer>(0, Codecs.INTEGER);
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+    }
+
+    /**
+     * It should not touch the disk while the buffer has room.
+     */
+    public void testNoSpillUnderMax() {
+        for (int i = 0; i < 4; i++) {
+            queue.push(i);
+        }
+        assertEquals(0, queue.getSpilledCount());
+        assertNull(queue.spillFile());
+    }
+
+    /**
+     * It should spill past max and receive everything in order.
+     */
+    public void testSpillInOrder() {
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            queue.push(i);
+        }
+        assertEquals(4, queue.size());
+        assertEquals(n - 4, queue.getSpillBacklog());
+        assertEquals(8L * (n - 4), queue.getSpillBytes());
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, queue.pop().intValue());
+            if (i == n / 2) {
+                queue.push(n + i);
+            }
+        }
+        assertEquals(n + n / 2, queue.pop().intValue());
+        assertEquals(0, queue.getSpillBacklog());
+        assertEquals(n - 3, queue.getSpilledCount());
+        assertEquals(n - 4, queue.getPeakSpillBacklog());
+    }
+
+    /**
+     * It should go back to memory once the spill file has drained.
+     */
+    public void testRefill() {
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                queue.push(i);
+            }
+            List<Integer> out = new ArrayList<Integer>();
+            assertEquals(10, queue.drainTo(out, 100));
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, out.get(i).intValue());
+            }
+            assertEquals(0, queue.spillFile().length());
+        }
+        assertEquals(18, queue.getSpilledCount());
+    }
+
+    public void testLargeValues() {
+        Spilling<byte[]> bytes = new Spilling<byte[]>(1, Codecs.BYTES);
+        byte[] large = new byte[3 * SpillFile.BUFFER_SIZE];
+        large[large.length - 1] = 7;
+        bytes.push(new byte[1]);
+        bytes.push(large);
+        bytes.push(new byte[] { 1, 2 });
+        assertEquals(1, bytes.pop().length);
+        assertEquals(7, bytes.pop()[large.length - 1]);
+        assertEquals(2, bytes.pop()[1]);
+    }
+
+    /**
+     * It should delete the spill file on close.
+     */
+    public void testCloseDeletesSpill() {
+        for (int i = 0; i < 10; i++) {
+            queue.push(i);
+        }
+        File file = queue.spillFile();
+        assertTrue(file.exists());
+        queue.close();
+        assertFalse(file.exists());
+    }
+
+    public void testChannel() throws InterruptedException {
+        final Channel<String> c = Channel.spilling(16, Codecs.STRING);
+        final int n = 10000;
+        for (int i = 0; i < n; i++) {
+            c.send("value " + i);
+        }
+        Thread t = go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = n; i < 2 * n; i++) {
+                    c.send("value " + i);
+                }
+            }
+        });
+        for (int i = 0; i < 2 * n; i++) {
+            assertEquals("value " + i, c.receive());
+        }
+        if (t != null) {
+            t.join();
+        }
+        c.close();
+    }
+}
@@ -0,0 +1,167 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import juggler.errors.ChannelClosedError;
+import juggler.errors.InvalidQueueSizeError;
+import juggler.errors.ReceiveError;
+import junit.framework.TestCase;
+
+public class SpscBufferedTest extends TestCase {
+
+    SpscBuffered<Integer> queue;
+
+    protected void setUp() throws Exception {
+        queue = new SpscBuffered<Integer>(3);
+    }
+
+    public void testBuffered() {
+        assertTrue(queue.isBuffered());
+        assertFalse(queue.isUnbuffered());
+    }
+
+    public void testInvalidQueueSize() {
+        try {
+            new SpscBuffered<Integer>(0);
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+    }
+
+    /**
+     * It should hold exactly max values, even when max is not a power of two.
+     */
+    public void testCapacity() {
+        assertTrue(queue.pushable());
+        assertFalse(queue.poppable());
+        queue.push(1);
+        queue.push(2);
+        queue.push(3);
+        assertFalse(queue.pushable());
+        assertTrue(queue.poppable());
+        assertEquals(3, queue.size());
+    }
+
+    /**
+     * It should enqueue and dequeue in order across wraparound.
+     */
+    public void testOrder() {
+        for (int i = 0; i < 20; i++) {
+            queue.push(i);
+            assertEquals(i, queue.pop().intValue());
+        }
+    }
+
+    /**
+     * It should hand every value from one goroutine to another in order.
+     */
+    public void testProducerConsumer() {
+        final int n = 100000;
+        final Channel<Integer> c = Channel.spsc(16);
+
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < n; i++) {
+                    c.send(i);
+                }
+            }
+        });
+
+        for (int i = 0; i < n; i++) {
+            assertEquals(i, c.receive().intValue());
+        }
+        c.close();
+    }
+
+    /**
+     * It should wake a blocked receiver when closed.
+     */
+    public void testCloseWhileReceiving() {
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                queue.close();
+            }
+        });
+        try {
+            queue.pop();
+            fail();
+        } catch (ReceiveError e) {
+        }
+        try {
+            queue.push(1);
+            fail();
+        } catch (ChannelClosedError e) {
+        }
+    }
+
+    /**
+     * It should complete deferred operations from the other side's sends
+     * and receives.
+     */
+    public void testDeferred() {
+        Pop<Integer> pop = queue.deferredPop();
+        assertFalse(pop.received());
+        queue.push(1);
+        assertTrue(pop.received());
+        assertEquals(1, pop.getObject().intValue());
+
+        queue.push(2);
+        queue.push(3);
+        queue.push(4);
+        Push<Integer> push = queue.deferredPush(5);
+        assertFalse(push.sent());
+        // the blocking send queues behind the deferred one
+        assertFalse(queue.tryPush(6));
+        assertEquals(2, queue.pop().intValue());
+        assertTrue(push.sent());
+        assertEquals(3, queue.pop().intValue());
+        assertEquals(4, queue.pop().intValue());
+        assertEquals(5, queue.pop().intValue());
+        assertNull(queue.tryPop());
+    }
+
+    /**
+     * It should take part in a select which has to wait.
+     */
+    public void testSelect() {
+        final Channel<Integer> c = Channel.spsc(2);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int i = 0; i < 100; i++) {
+                    c.send(i);
+                }
+            }
+        });
+
+        final int[] received = new int[1];
+        for (int i = 0; i < 100; i++) {
+            Selector.select(new Selector.SelectorBlock() {
+                @Override
+                public void yield(Selector s) {
+                    s.receiveCase(c, new Selector.ReceiveBlock<Integer>() {
+                        @Override
+                        public void yield(Integer value) {
+                            assertEquals(received[0], value.intValue());
+                            received[0] += 1;
+                        }
+                    });
+                }
+            });
+        }
+        assertEquals(100, received[0]);
+        c.close();
+    }
+}
@@ -0,0 +1,106 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import juggler.errors.InvalidQueueSizeError;
+import junit.framework.TestCase;
+
+public class UnboundedTest extends TestCase {
+
+    Unbounded<Integer> queue;
+
+    protected void setUp() throws Exception {
+        queue = new Unbounded<Integer>(0);
+    }
+
+    public void testInvalidSoftLimit() {
+        try {
+            new Unbounded<Integer>(-1);
+            fail();
+        } catch (InvalidQueueSizeError e) {
+        }
+    }
+
+    /**
+     * It should never block a sender.
+     */
+    public void testPushNeverBlocks() {
+        for (int i = 0; i < 10 * Unbounded.SEGMENT_SIZE; i++) {
+            queue.push(i);
+        }
+        assertTrue(queue.pushable());
+        assertEquals(10 * Unbounded.SEGMENT_SIZE, queue.size());
+        for (int i = 0; i < 10 * Unbounded.SEGMENT_SIZE; i++) {
+            assertEquals(i, queue.pop().intValue());
+        }
+        assertEquals(1, queue.segments());
+    }
+
+    /**
+     * It should hand a value straight to a waiting receiver.
+     */
+    public void testWaitingReceiver() {
+        final Channel<Integer> c = Channel.unbounded();
+        go(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                c.send(42);
+            }
+        });
+        assertEquals(42, c.receive().intValue());
+        c.close();
+    }
+
+    /**
+     * It should warn once each time the backlog rises above the soft limit.
+     */
+    public void testSoftLimit() {
+        final List<LogRecord> records = new ArrayList<LogRecord>();
+        Handler handler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                records.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        Logger logger = Logger.getLogger(Unbounded.class.getName());
+        logger.addHandler(handler);
+        try {
+            Unbounded<Integer> limited = new Unbounded<Integer>(2);
+            for (int i = 0; i < 5; i++) {
+                limited.push(i);
+            }
+            assertTrue(limited.isOverSoftLimit());
+            assertEquals(1, records.size());
+
+            limited.pop();
+            limited.pop();
+            limited.pop();
+            assertFalse(limited.isOverSoftLimit());
+
+            limited.push(5);
+            limited.push(6);
+            assertEquals(2, records.size());
+        } finally {
+            logger.removeHandler(handler);
+        }
+    }
+}
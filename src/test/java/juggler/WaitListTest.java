@@ -0,0 +1,101 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class WaitListTest extends TestCase {
+
+    WaitList<Pop<Integer>> list;
+
+    protected void setUp() throws Exception {
+        list = new WaitList<Pop<Integer>>(WaitList.KIND);
+    }
+
+    private List<Pop<Integer>> fill(int n) {
+        List<Pop<Integer>> pops = new ArrayList<Pop<Integer>>();
+        for (int i = 0; i < n; i++) {
+            Pop<Integer> pop = new Pop<Integer>();
+            pops.add(pop);
+            list.add(pop);
+        }
+        return pops;
+    }
+
+    public void testFifo() {
+        List<Pop<Integer>> pops = fill(3);
+        assertEquals(3, list.size());
+        assertSame(pops.get(0), list.getFirst());
+        assertSame(pops.get(2), list.getLast());
+        assertSame(pops.get(0), list.removeFirst());
+        assertSame(pops.get(1), list.removeFirst());
+        assertSame(pops.get(2), list.removeFirst());
+        assertTrue(list.isEmpty());
+    }
+
+    public void testRemoveMiddle() {
+        List<Pop<Integer>> pops = fill(3);
+        assertTrue(list.remove(pops.get(1)));
+        assertFalse(list.remove(pops.get(1)));
+        assertFalse(list.contains(pops.get(1)));
+        List<Pop<Integer>> left = new ArrayList<Pop<Integer>>();
+        for (Pop<Integer> pop : list) {
+            left.add(pop);
+        }
+        assertEquals(2, left.size());
+        assertSame(pops.get(2), left.get(1));
+    }
+
+    /**
+     * It should allow removing the element just returned while iterating.
+     */
+    public void testRemoveWhileIterating() {
+        fill(5);
+        for (Pop<Integer> pop : list) {
+            list.remove(pop);
+        }
+        assertTrue(list.isEmpty());
+    }
+
+    /**
+     * An operation can be in one list of each slot at once.
+     */
+    public void testSlots() {
+        WaitList<Waiter<Integer>> all = new WaitList<Waiter<Integer>>(WaitList.OPERATIONS);
+        Pop<Integer> pop = new Pop<Integer>();
+        all.add(pop);
+        list.add(pop);
+        try {
+            list.add(pop);
+            fail();
+        } catch (IllegalStateException e) {
+        }
+        assertTrue(all.remove(pop));
+        assertTrue(list.contains(pop));
+        list.clear();
+        assertFalse(list.contains(pop));
+        list.add(pop);
+        assertEquals(1, list.size());
+    }
+
+    /**
+     * Withdrawing many waiters should not rebuild the lists each time.
+     */
+    public void testRemoveOperations() {
+        Buffered<Integer> queue = new Buffered<Integer>(1);
+        List<Pop<Integer>> pops = new ArrayList<Pop<Integer>>();
+        for (int i = 0; i < 20000; i++) {
+            pops.add(queue.deferredPop());
+        }
+        queue.push(1);
+        for (int i = pops.size() - 1; i > 0; i--) {
+            queue.remove_operations(pops.get(i));
+        }
+        assertTrue(pops.get(0).received());
+        assertTrue(queue.operations.isEmpty());
+        assertTrue(queue.pops.isEmpty());
+        queue.push(2);
+        assertEquals(2, queue.pop().intValue());
+    }
+}
@@ -0,0 +1,101 @@
+package juggler;
+
+import static juggler.Juggler.go;
+
+import junit.framework.TestCase;
+
+public class WaitStrategyTest extends TestCase {
+
+    public void testDefault() {
+        Channel<Integer> c = new Channel<Integer>();
+        assertEquals(WaitStrategy.BLOCKING, c.getWaitStrategy());
+        c.setWaitStrategy(WaitStrategy.ADAPTIVE);
+        assertEquals(WaitStrategy.ADAPTIVE, c.getWaitStrategy());
+        try {
+            c.setWaitStrategy(null);
+            fail();
+        } catch (NullPointerException e) {
+        }
+    }
+
+    /**
+     * Every strategy should hand values off in order.
+     */
+    public void testHandOff() throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            final Channel<Integer> c = new Channel<Integer>();
+            c.setWaitStrategy(strategy);
+            final int n = 200;
+            Thread t = go(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < n; i++) {
+                        c.send(i);
+                    }
+                }
+            });
+            for (int i = 0; i < n; i++) {
+                assertEquals(strategy.toString(), i, c.receive().intValue());
+            }
+            if (t != null) {
+                t.join();
+            }
+        }
+    }
+
+    public void testTimeout() {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            Channel<Integer> c = new Channel<Integer>(1);
+            c.setWaitStrategy(strategy);
+            long start = System.nanoTime();
+            assertNull(c.receive(10));
+            assertTrue(System.nanoTime() - start >= 5000000L);
+        }
+    }
+
+    /**
+     * Closing should wake a spinning or parked receiver.
+     */
+    public void testCloseWakes() throws InterruptedException {
+        for (WaitStrategy strategy : WaitStrategy.values()) {
+            Channel<Integer> c = new Channel<Integer>();
+            c.setWaitStrategy(strategy);
+            final Pop<Integer> pop = c.getQueue().deferredPop();
+            final boolean[] received = { true };
+            Thread t = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    received[0] = pop.await();
+                }
+            });
+            t.start();
+            Thread.sleep(10);
+            c.close();
+            t.join(5000);
+            assertFalse(t.isAlive());
+            assertFalse(received[0]);
+        }
+    }
+
+    /**
+     * An interrupted waiter should stop waiting and keep its interrupt.
+     */
+    public void testInterrupt() throws InterruptedException {
+        Channel<Integer> c = new Channel<Integer>();
+        final Pop<Integer> pop = c.getQueue().deferredPop();
+        final boolean[] interrupted = { false };
+        Thread t = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pop.await();
+                interrupted[0] = Thread.currentThread().isInterrupted();
+            }
+        });
+        t.start();
+        Thread.sleep(10);
+        t.interrupt();
+        t.join(5000);
+        assertFalse(t.isAlive());
+        assertTrue(interrupted[0]);
+    }
+}
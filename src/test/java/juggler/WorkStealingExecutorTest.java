@@ -0,0 +1,180 @@
+package juggler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+public class WorkStealingExecutorTest extends TestCase {
+
+    WorkStealingExecutor executor;
+
+    protected void setUp() throws Exception {
+        executor = GoExecutors.workStealing(4);
+    }
+
+    protected void tearDown() throws Exception {
+        executor.shutdown();
+    }
+
+    public void testParallelism() {
+        assertEquals(4, executor.getParallelism());
+        assertEquals(Runtime.getRuntime().availableProcessors(),
+                new WorkStealingExecutor().getParallelism());
+    }
+
+    /**
+     * should run goroutines spawned from within other goroutines on the
+     * pool's own workers, even with a single worker
+     */
+    public void testNestedSpawn() throws InterruptedException {
+        final WorkStealingExecutor single = GoExecutors.workStealing(1);
+        final int fanout = 100;
+        final CountDownLatch done = new CountDownLatch(fanout * fanout);
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+
+        for (int i = 0; i < fanout; i++) {
+            Juggler.go(single, new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < fanout; j++) {
+                        Juggler.go(single, new Runnable() {
+                            @Override
+                            public void run() {
+                                threads.add(Thread.currentThread());
+                                done.countDown();
+                            }
+                        });
+                    }
+                }
+            });
+        }
+
+        try {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertEquals(1, threads.size());
+            assertTrue(threads.iterator().next() instanceof ForkJoinWorkerThread);
+        } finally {
+            single.shutdown();
+        }
+    }
+
+    /**
+     * should report a failing goroutine whether it was launched from inside
+     * the pool or from outside
+     */
+    public void testFailureReported() throws InterruptedException {
+        final CountDownLatch reported = new CountDownLatch(2);
+        final AtomicReference<Throwable> last = new AtomicReference<Throwable>();
+        Thread.UncaughtExceptionHandler previous = Thread.getDefaultUncaughtExceptionHandler();
+        Thread.setDefaultUncaughtExceptionHandler(new Thread.UncaughtExceptionHandler() {
+            @Override
+            public void uncaughtException(Thread t, Throwable e) {
+                last.set(e);
+                reported.countDown();
+            }
+        });
+        try {
+            Juggler.go(executor, new Runnable() {
+                @Override
+                public void run() {
+                    Juggler.go(executor, new Runnable() {
+                        @Override
+                        public void run() {
+                            throw new IllegalStateException("forked");
+                        }
+                    });
+                    throw new IllegalStateException("submitted");
+                }
+            });
+            assertTrue(reported.await(5, TimeUnit.SECONDS));
+            assertTrue(last.get() instanceof IllegalStateException);
+        } finally {
+            Thread.setDefaultUncaughtExceptionHandler(previous);
+        }
+    }
+
+    /**
+     * should keep a pipeline running when more goroutines are blocked on
+     * channels than the pool has workers
+     */
+    public void testSieve() throws InterruptedException {
+        final List<Channel<Integer>> channels = Collections.synchronizedList(new ArrayList<Channel<Integer>>());
+        final Channel<Integer> primes = new Channel<Integer>();
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Integer> result = new ArrayList<Integer>();
+
+        Juggler.go(executor, new Runnable() {
+            @Override
+            public void run() {
+                Channel<Integer> ch = generate(channels);
+                while (true) {
+                    int prime = ch.receive();
+                    primes.send(prime);
+                    ch = filter(ch, prime, channels);
+                }
+            }
+        });
+        Juggler.go(executor, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 15; i++) {
+                    result.add(primes.receive());
+                }
+                done.countDown();
+            }
+        });
+
+        try {
+            assertTrue(done.await(10, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList(2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41, 43, 47), result);
+        } finally {
+            primes.close();
+            synchronized (channels) {
+                for (Channel<Integer> ch : channels) {
+                    ch.close();
+                }
+            }
+        }
+    }
+
+    private Channel<Integer> generate(List<Channel<Integer>> channels) {
+        final Channel<Integer> ch = new Channel<Integer>();
+        channels.add(ch);
+        Juggler.go(executor, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 2; ; i++) {
+                    ch.send(i);
+                }
+            }
+        });
+        return ch;
+    }
+
+    private Channel<Integer> filter(final Channel<Integer> in, final int prime,
+                                    List<Channel<Integer>> channels) {
+        final Channel<Integer> out = new Channel<Integer>();
+        channels.add(out);
+        Juggler.go(executor, new Runnable() {
+            @Override
+            public void run() {
+                while (true) {
+                    int i = in.receive();
+                    if (i % prime != 0) {
+                        out.send(i);
+                    }
+                }
+            }
+        });
+        return out;
+    }
+}
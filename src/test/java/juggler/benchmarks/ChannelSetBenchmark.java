@@ -0,0 +1,103 @@
+package juggler.benchmarks;
+
+import static juggler.Juggler.go;
+
+import juggler.Channel;
+import juggler.ChannelSet;
+import juggler.Selector;
+
+/**
+ * Fan-in from n channels, as a gateway with one channel per client would
+ * do it: a goroutine sends to the channels in scattered order while the
+ * receiver takes each value through a ChannelSet or a compiled select. The
+ * select scans every channel each time, so its cost grows with n; the set
+ * only looks at channels which were signalled ready. Past 256 channels only
+ * the set is measured, as a select cannot involve that many.
+ */
+public class ChannelSetBenchmark {
+
+    private static final int VALUES = 5000;
+
+    // a select refuses more channels than this
+    private static final int SELECT_LIMIT = 256;
+
+    @SuppressWarnings("unchecked")
+    static Channel<Integer>[] channels(int n) {
+        Channel<Integer>[] channels = new Channel[n];
+        for (int i = 0; i < n; i++) {
+            channels[i] = new Channel<Integer>(4);
+        }
+        return channels;
+    }
+
+    static void produce(final Channel<Integer>[] channels) {
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < VALUES; i++) {
+                    channels[(int) ((i * 7919L) % channels.length)].send(i);
+                }
+            }
+        });
+    }
+
+    static double set(int n) {
+        Channel<Integer>[] channels = channels(n);
+        ChannelSet<Integer> set = new ChannelSet<Integer>();
+        for (Channel<Integer> channel : channels) {
+            set.add(channel);
+        }
+        produce(channels);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < VALUES; i++) {
+            set.receive();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Channel<Integer> channel : channels) {
+            channel.close();
+        }
+        return ((double) elapsed) / VALUES;
+    }
+
+    static double select(int n) {
+        final Channel<Integer>[] channels = channels(n);
+        final Selector.ReceiveBlock<Integer> ignore = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer value) {
+            }
+        };
+        Selector selector = Selector.compile(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                for (Channel<Integer> channel : channels) {
+                    s.receiveCase(channel, ignore);
+                }
+            }
+        });
+        produce(channels);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < VALUES; i++) {
+            selector.select();
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Channel<Integer> channel : channels) {
+            channel.close();
+        }
+        return ((double) elapsed) / VALUES;
+    }
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 3; round++) {
+            for (int n = 10; n <= 10000; n *= 10) {
+                if (n <= SELECT_LIMIT) {
+                    System.out.printf("%6d channels  set %10.0f ns/receive  select %10.0f ns/receive\n",
+                            n, set(n), select(n));
+                } else {
+                    System.out.printf("%6d channels  set %10.0f ns/receive\n", n, set(n));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package juggler.benchmarks;
+
+import juggler.Codec;
+import juggler.Codecs;
+
+/**
+ * Prints the encoded size and the cost of an encode/decode round trip for
+ * each built-in codec, compared with Java serialization of the same value.
+ */
+public class CodecBenchmark {
+
+    private static final int WARMUP = 200000;
+    private static final int ITERATIONS = 1000000;
+
+    /** Keeps the JIT from discarding the decoded values. */
+    static volatile long sink;
+
+    private static <T> void run(String name, Codec<T> codec, T value) {
+        long hash = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            hash += codec.decode(codec.encode(value)).hashCode();
+        }
+        int bytes = codec.encode(value).length;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            hash += codec.decode(codec.encode(value)).hashCode();
+        }
+        long elapsed = System.nanoTime() - start;
+        sink = hash;
+
+        System.out.printf("%-24s %6d bytes/msg %10.1f ns/msg\n", name, bytes,
+                ((double) elapsed) / ITERATIONS);
+    }
+
+    private static <T> void compare(String name, Codec<T> codec, T value) {
+        run(name, codec, value);
+        run(name + " (serialized)", Codecs.<T>serialization(), value);
+    }
+
+    public static void main(String[] args) {
+        compare("String", Codecs.STRING, "the quick brown fox");
+        compare("Integer", Codecs.INTEGER, 123456);
+        compare("Long", Codecs.LONG, 123456789L);
+        compare("Double", Codecs.DOUBLE, Math.PI);
+        compare("Boolean", Codecs.BOOLEAN, true);
+        compare("byte[64]", Codecs.BYTES, new byte[64]);
+        compare("int[64]", Codecs.INTS, new int[64]);
+        compare("long[64]", Codecs.LONGS, new long[64]);
+        compare("double[64]", Codecs.DOUBLES, new double[64]);
+    }
+}
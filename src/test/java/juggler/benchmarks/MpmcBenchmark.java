@@ -0,0 +1,76 @@
+package juggler.benchmarks;
+
+import static juggler.Juggler.go;
+
+import java.util.concurrent.CountDownLatch;
+
+import juggler.Channel;
+
+/**
+ * Compares the MPMC channel with the default buffered channel as the number
+ * of senders and receivers sharing one work channel grows.
+ */
+public class MpmcBenchmark {
+
+    private static final int MESSAGES = 1000000;
+    private static final int CAPACITY = 1024;
+
+    interface Factory {
+        Channel<Integer> create(int max);
+    }
+
+    static final Factory BUFFERED = new Factory() {
+        @Override
+        public Channel<Integer> create(int max) {
+            return new Channel<Integer>(max);
+        }
+    };
+
+    static final Factory MPMC = new Factory() {
+        @Override
+        public Channel<Integer> create(int max) {
+            return Channel.mpmc(max);
+        }
+    };
+
+    static double throughput(Factory factory, int threads) throws InterruptedException {
+        final Channel<Integer> c = factory.create(CAPACITY);
+        final int each = MESSAGES / threads;
+        final CountDownLatch done = new CountDownLatch(threads);
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < each; i++) {
+                        c.send(i);
+                    }
+                }
+            });
+            go(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < each; i++) {
+                        c.receive();
+                    }
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        c.close();
+        return each * threads * 1e9 / elapsed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        for (int round = 0; round < 2; round++) {
+            for (int threads = 1; threads <= 8; threads *= 2) {
+                System.out.printf("%d x %d  buffered: %12.0f msgs/s  mpmc: %12.0f msgs/s\n",
+                        threads, threads, throughput(BUFFERED, threads),
+                        throughput(MPMC, threads));
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package juggler.benchmarks;
+
+import juggler.Channel;
+import juggler.Codecs;
+
+/**
+ * Measures the heap held by a backlog of one million values in the default
+ * buffered channel and in the off-heap channel.
+ */
+public class OffHeapBenchmark {
+
+    private static final int BACKLOG = 1000000;
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static void measure(String name, Channel<String> c) {
+        long before = usedHeap();
+        for (int i = 0; i < BACKLOG; i++) {
+            c.send("message " + i);
+        }
+        long after = usedHeap();
+        System.out.printf("%-10s %8.1f MB heap for %d queued values\n", name,
+                (after - before) / (1024.0 * 1024.0), BACKLOG);
+        c.close();
+    }
+
+    public static void main(String[] args) {
+        measure("buffered", new Channel<String>(BACKLOG));
+        measure("off-heap", Channel.offHeap(32 * BACKLOG, Codecs.STRING));
+    }
+}
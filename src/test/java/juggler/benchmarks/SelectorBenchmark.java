@@ -0,0 +1,79 @@
+package juggler.benchmarks;
+
+import static juggler.Juggler.go;
+
+import juggler.Channel;
+import juggler.Selector;
+
+/**
+ * Cost of a select receiving from one of n channels while a goroutine
+ * sends to them in turn. Buffered channels mostly take the path where a
+ * case is ready when scanned; unbuffered ones make every select register a
+ * waiter on all n channels, so the time per select should grow roughly
+ * linearly with n. Compiled selectors build their cases once and reuse
+ * them for every select.
+ */
+public class SelectorBenchmark {
+
+    private static final int SELECTS = 20000;
+
+    static double perSelect(final int cases, int max, boolean compiled) {
+        @SuppressWarnings("unchecked")
+        final Channel<Integer>[] channels = new Channel[cases];
+        for (int i = 0; i < cases; i++) {
+            channels[i] = new Channel<Integer>(max);
+        }
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < SELECTS; i++) {
+                    channels[i % cases].send(i);
+                }
+            }
+        });
+
+        final int[] received = new int[1];
+        final Selector.ReceiveBlock<Integer> block = new Selector.ReceiveBlock<Integer>() {
+            @Override
+            public void yield(Integer value) {
+                received[0] += 1;
+            }
+        };
+        Selector.SelectorBlock select = new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                for (Channel<Integer> channel : channels) {
+                    s.receiveCase(channel, block);
+                }
+            }
+        };
+
+        Selector selector = Selector.compile(select);
+        long start = System.nanoTime();
+        for (int i = 0; i < SELECTS; i++) {
+            if (compiled) {
+                selector.select();
+            } else {
+                Selector.select(select);
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Channel<Integer> channel : channels) {
+            channel.close();
+        }
+        if (received[0] != SELECTS) {
+            throw new IllegalStateException("received " + received[0]);
+        }
+        return ((double) elapsed) / SELECTS;
+    }
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 3; round++) {
+            for (int cases = 1; cases <= 64; cases *= 2) {
+                System.out.printf("%3d cases  buffered %8.0f / %8.0f ns/select  unbuffered %8.0f / %8.0f ns/select (compiled)\n",
+                        cases, perSelect(cases, 16, false), perSelect(cases, 16, true),
+                        perSelect(cases, 0, false), perSelect(cases, 0, true));
+            }
+        }
+    }
+}
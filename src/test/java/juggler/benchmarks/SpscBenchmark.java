@@ -0,0 +1,87 @@
+package juggler.benchmarks;
+
+import static juggler.Juggler.go;
+
+import juggler.Channel;
+
+/**
+ * Compares the SPSC channel with the default buffered channel: throughput of
+ * one producer streaming to one consumer, and round-trip latency of a value
+ * bounced between two goroutines.
+ */
+public class SpscBenchmark {
+
+    private static final int MESSAGES = 1000000;
+    private static final int ROUND_TRIPS = 100000;
+    private static final int CAPACITY = 1024;
+
+    interface Factory {
+        Channel<Integer> create(int max);
+    }
+
+    static final Factory BUFFERED = new Factory() {
+        @Override
+        public Channel<Integer> create(int max) {
+            return new Channel<Integer>(max);
+        }
+    };
+
+    static final Factory SPSC = new Factory() {
+        @Override
+        public Channel<Integer> create(int max) {
+            return Channel.spsc(max);
+        }
+    };
+
+    static double throughput(Factory factory) {
+        final Channel<Integer> c = factory.create(CAPACITY);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < MESSAGES; i++) {
+                    c.send(i);
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < MESSAGES; i++) {
+            c.receive();
+        }
+        long elapsed = System.nanoTime() - start;
+        c.close();
+        return MESSAGES * 1e9 / elapsed;
+    }
+
+    static double latency(Factory factory) {
+        final Channel<Integer> ping = factory.create(1);
+        final Channel<Integer> pong = factory.create(1);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ROUND_TRIPS; i++) {
+                    pong.send(ping.receive());
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            ping.send(i);
+            pong.receive();
+        }
+        long elapsed = System.nanoTime() - start;
+        ping.close();
+        pong.close();
+        return ((double) elapsed) / ROUND_TRIPS;
+    }
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 3; round++) {
+            System.out.printf("buffered: %12.0f msgs/s %10.0f ns/round trip\n",
+                    throughput(BUFFERED), latency(BUFFERED));
+            System.out.printf("spsc:     %12.0f msgs/s %10.0f ns/round trip\n",
+                    throughput(SPSC), latency(SPSC));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package juggler.benchmarks;
+
+import static juggler.Juggler.go;
+
+import juggler.Channel;
+import juggler.WaitStrategy;
+
+/**
+ * Round-trip latency of a value bounced between two goroutines over
+ * unbuffered channels, for each wait strategy. Spinning strategies need a
+ * core per goroutine to show their advantage.
+ */
+public class WaitStrategyBenchmark {
+
+    private static final int ROUND_TRIPS = 100000;
+
+    static double latency(WaitStrategy strategy) {
+        final Channel<Integer> ping = new Channel<Integer>();
+        final Channel<Integer> pong = new Channel<Integer>();
+        ping.setWaitStrategy(strategy);
+        pong.setWaitStrategy(strategy);
+        go(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < ROUND_TRIPS; i++) {
+                    pong.send(ping.receive());
+                }
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUND_TRIPS; i++) {
+            ping.send(i);
+            pong.receive();
+        }
+        long elapsed = System.nanoTime() - start;
+        ping.close();
+        pong.close();
+        return ((double) elapsed) / ROUND_TRIPS;
+    }
+
+    public static void main(String[] args) {
+        for (int round = 0; round < 3; round++) {
+            for (WaitStrategy strategy : WaitStrategy.values()) {
+                System.out.printf("%-10s %10.0f ns/round trip\n", strategy,
+                        latency(strategy));
+            }
+        }
+    }
+}
@@ -9,8 +9,6 @@ import java.util.Collection;
 import java.util.Comparator;
 import java.util.concurrent.PriorityBlockingQueue;
 
-import static juggler.Selector.select;
-
 public class Balancer {
 
     private final PriorityBlockingQueue<Worker> pool;
@@ -36,24 +34,25 @@ public class Balancer {
     }
 
     public void balance(final Channel<Request> work) {
+        Selector selector = Selector.compile(new Selector.SelectorBlock() {
+            @Override
+            public void yield(Selector s) {
+                s.receiveCase(work, new Selector.ReceiveBlock<Request>() {
+                    @Override
+                    public void yield(Request req) {
+                        dispatch(req);
+                    }
+                });
+                s.receiveCase(done, new Selector.ReceiveBlock<Worker>() {
+                    @Override
+                    public void yield(Worker w) {
+                        completed(w);
+                    }
+                });
+            }
+        });
         while (true) {
-            select(new Selector.SelectorBlock() {
-                @Override
-                public void yield(Selector s) {
-                    s.receiveCase(work, new Selector.ReceiveBlock<Request>() {
-                        @Override
-                        public void yield(Request req) {
-                            dispatch(req);
-                        }
-                    });
-                    s.receiveCase(done, new Selector.ReceiveBlock<Worker>() {
-                        @Override
-                        public void yield(Worker w) {
-                            completed(w);
-                        }
-                    });
-                }
-            });
+            selector.select();
             print();
         }
     }